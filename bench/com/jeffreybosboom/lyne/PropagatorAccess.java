@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import com.jeffreybosboom.lyne.rules.IncrementalInferenceRule;
+import java.util.List;
+
+/**
+ * Exposes the package-private Propagator to the benchmarks, so they can check
+ * and time rules the way the search applies them (in full once, then to each
+ * changed edge).  This is in the benchmark tree, so it isn't part of the
+ * solver's API.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class PropagatorAccess {
+	private final Propagator propagator;
+	public PropagatorAccess(Puzzle puzzle, List<? extends IncrementalInferenceRule> rules) {
+		this.propagator = new Propagator(puzzle, rules);
+	}
+
+	/**
+	 * Applies each rule in full, then propagates the changes they make.
+	 * @throws ContradictionException if propagation finds a contradiction
+	 */
+	public Puzzle propagateAll(Puzzle puzzle) {
+		return propagator.propagateAll(puzzle);
+	}
+
+	/**
+	 * Propagates a change to the edge with the given index, applying only the
+	 * rules watching the edges that change.
+	 * @throws ContradictionException if propagation finds a contradiction
+	 */
+	public Puzzle propagate(Puzzle puzzle, int edge) {
+		return propagator.propagate(puzzle, puzzle.topology().edge(edge));
+	}
+}
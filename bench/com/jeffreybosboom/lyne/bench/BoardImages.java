@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.bench;
+
+import com.jeffreybosboom.lyne.Colors;
+import com.jeffreybosboom.lyne.Node;
+import com.jeffreybosboom.lyne.Puzzle;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+
+/**
+ * Renders puzzles in Lyne's palette, closely enough for Effector.parseImage
+ * to recover them, so image parsing can be benchmarked without checking in
+ * screenshots.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class BoardImages {
+	private BoardImages() {}
+	private static final int CELL = 96, NODE = 64, MARK = 12, MARGIN = 48;
+
+	/**
+	 * Renders the given puzzle as Lyne would display it (on the game border
+	 * color, as screen captures of the game board are).
+	 */
+	public static BufferedImage render(Puzzle puzzle) {
+		int rows = puzzle.nodes().mapToInt(Node::row).max().getAsInt() + 1;
+		int cols = puzzle.nodes().mapToInt(Node::col).max().getAsInt() + 1;
+		BufferedImage image = new BufferedImage(2*MARGIN + cols*CELL, 2*MARGIN + rows*CELL, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(new Color(Colors.GAME_BORDER));
+		g.fillRect(0, 0, image.getWidth(), image.getHeight());
+		for (Iterator<Node> it = puzzle.nodes().iterator(); it.hasNext();) {
+			Node n = it.next();
+			int x = MARGIN + n.col()*CELL + (CELL - NODE)/2, y = MARGIN + n.row()*CELL + (CELL - NODE)/2;
+			g.setColor(new Color(color(n.kind())));
+			g.fillRect(x, y, NODE, NODE);
+			if (n.kind() == Node.Kind.OCTAGON) {
+				g.setColor(new Color(Colors.PIP));
+				int pips = n.desiredEdges()/2;
+				for (int i = 0; i < pips; ++i)
+					g.fillRect(x + MARK/2 + (i % 3) * (MARK + MARK/2), y + MARK/2 + (i / 3) * (MARK + MARK/2), MARK, MARK);
+			} else if (n.isTerminal()) {
+				g.setColor(new Color(Colors.TERMINAL_CENTER));
+				g.fillRect(x + (NODE - MARK)/2, y + (NODE - MARK)/2, MARK, MARK);
+			}
+		}
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Renders the given puzzle in the middle of a screen of the given size
+	 * filled with non-Lyne colors, as the Effector constructor sees it.
+	 */
+	public static BufferedImage renderScreen(Puzzle puzzle, int width, int height) {
+		BufferedImage board = render(puzzle);
+		BufferedImage screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = screen.createGraphics();
+		for (int y = 0; y < height; y += 64)
+			for (int x = 0; x < width; x += 64) {
+				//a desktop-ish pattern that avoids Lyne's palette
+				g.setColor(new Color((x * 7 + y * 13) % 200, (x + y) % 100, 40 + (x * y) % 100));
+				g.fillRect(x, y, 64, 64);
+			}
+		g.drawImage(board, (width - board.getWidth())/2, (height - board.getHeight())/2, null);
+		g.dispose();
+		return screen;
+	}
+
+	private static int color(Node.Kind kind) {
+		switch (kind) {
+			case TRIANGLE: return Colors.TRIANGLE;
+			case DIAMOND: return Colors.DIAMOND;
+			case SQUARE: return Colors.SQUARE;
+			case OCTAGON: return Colors.OCTAGON;
+			default: throw new AssertionError(kind);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.bench;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.jeffreybosboom.lyne.Node;
+import com.jeffreybosboom.lyne.Pair;
+import com.jeffreybosboom.lyne.Puzzle;
+import com.jeffreybosboom.lyne.Solver;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The checked-in benchmark puzzles (bench/corpus), in the Puzzle.fromString
+ * format separated by blank lines, plus helpers for deriving benchmark inputs
+ * from them.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class Corpus {
+	private Corpus() {}
+
+	/**
+	 * The corpus names, from easiest to hardest.
+	 */
+	public static final ImmutableList<String> NAMES = ImmutableList.of("easy", "medium", "hard");
+
+	public static ImmutableList<String> strings(String name) {
+		InputStream stream = Corpus.class.getResourceAsStream("/corpus/" + name + ".txt");
+		if (stream == null)
+			throw new IllegalArgumentException("no corpus named " + name);
+		ImmutableList.Builder<String> builder = ImmutableList.builder();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+			List<String> rows = new ArrayList<>();
+			for (String line = in.readLine(); ; line = in.readLine()) {
+				if (line != null && !line.trim().isEmpty()) {
+					rows.add(line.trim());
+					continue;
+				}
+				if (!rows.isEmpty()) {
+					builder.add(String.join("\n", rows));
+					rows.clear();
+				}
+				if (line == null) break;
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return builder.build();
+	}
+
+	public static ImmutableList<Puzzle> puzzles(String name) {
+		return ImmutableList.copyOf(strings(name).stream().map(Puzzle::fromString).iterator());
+	}
+
+	/**
+	 * Returns the solution color of each edge of the given puzzle, per
+	 * Solver.solve.
+	 */
+	public static ImmutableMap<Pair<Node, Node>, Node.Kind> solutionEdges(Puzzle puzzle) {
+		Set<List<Node>> paths = Solver.solve(puzzle);
+		if (paths == null)
+			throw new IllegalArgumentException("unsolvable:\n" + puzzle);
+		ImmutableMap.Builder<Pair<Node, Node>, Node.Kind> builder = ImmutableMap.builder();
+		List<Pair<Node, Node>> colored = new ArrayList<>();
+		for (List<Node> path : paths)
+			for (int i = 1; i < path.size(); ++i) {
+				Pair<Node, Node> edge = Pair.sorted(path.get(i-1), path.get(i));
+				colored.add(edge);
+				builder.put(edge, path.get(0).kind());
+			}
+		puzzle.edges().filter(e -> !colored.contains(e)).forEachOrdered(e -> builder.put(e, Node.Kind.NONE));
+		return builder.build();
+	}
+
+	/**
+	 * Returns a partially-solved state of the given puzzle, such as the solver
+	 * would see mid-search: each edge is independently set to its solution
+	 * color with the given probability.
+	 */
+	public static Puzzle partialState(Puzzle puzzle, double fraction, Random random) {
+		ImmutableMap<Pair<Node, Node>, Node.Kind> solution = solutionEdges(puzzle);
+		for (Iterator<Pair<Node, Node>> it = puzzle.edges().collect(Collectors.toList()).iterator(); it.hasNext();) {
+			Pair<Node, Node> edge = it.next();
+			if (random.nextDouble() < fraction)
+				puzzle = puzzle.set(edge.first, edge.second, solution.get(edge));
+		}
+		return puzzle;
+	}
+}
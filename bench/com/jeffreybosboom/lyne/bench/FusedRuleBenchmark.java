@@ -0,0 +1,297 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.bench;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.jeffreybosboom.lyne.ContradictionException;
+import com.jeffreybosboom.lyne.Node;
+import com.jeffreybosboom.lyne.Pair;
+import com.jeffreybosboom.lyne.PropagatorAccess;
+import com.jeffreybosboom.lyne.Puzzle;
+import com.jeffreybosboom.lyne.rules.ColorColorRule;
+import com.jeffreybosboom.lyne.rules.ColorDegreeRule;
+import com.jeffreybosboom.lyne.rules.ColorOctagonRule;
+import com.jeffreybosboom.lyne.rules.CrossingEdgesRule;
+import com.jeffreybosboom.lyne.rules.DesiredEdgesRule;
+import com.jeffreybosboom.lyne.rules.FusedInferenceRule;
+import com.jeffreybosboom.lyne.rules.IncrementalInferenceRule;
+import com.jeffreybosboom.lyne.rules.InferenceRule;
+import com.jeffreybosboom.lyne.rules.TerminalTerminalRule;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Times FusedInferenceRule against the chain of separate rules it replaces,
+ * each applied to a fixpoint on partially-solved states of the puzzles in a
+ * corpus.  Setup first checks that the two agree, and main runs just that
+ * check over every corpus:
+ * <ul>
+ * <li> applied in full to a fixpoint, they reach the same fixpoint (or both
+ * find a contradiction) on every state, including states perturbed away from
+ * the solution;
+ * <li> propagated by a Propagator, as the search does, they reach the same
+ * result after the initial propagation and after each decision of random
+ * walks down the search tree, which exercises the rules' incremental
+ * application to changed edges;
+ * <li> the fused rule's scope for each changed edge is the union of the
+ * separate rules' scopes, so conflict analysis gets the same explanations.
+ * </ul>
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FusedRuleBenchmark {
+	/**
+	 * The separate rules, split into those Solver applied once before
+	 * propagation and those the Propagator ran.
+	 */
+	private static final ImmutableList<InferenceRule> ONE_TIME = ImmutableList.of(
+			new ColorColorRule(),
+			new ColorOctagonRule(),
+			new TerminalTerminalRule()
+	);
+	private static final ImmutableList<IncrementalInferenceRule> INCREMENTAL = ImmutableList.of(
+			new DesiredEdgesRule(),
+			new CrossingEdgesRule(),
+			new ColorDegreeRule()
+	);
+	private static final ImmutableList<InferenceRule> CHAIN = ImmutableList.<InferenceRule>builder()
+			.addAll(ONE_TIME).addAll(INCREMENTAL).build();
+	private static final FusedInferenceRule FUSED_RULE = new FusedInferenceRule();
+	private static final ImmutableList<InferenceRule> FUSED = ImmutableList.of(FUSED_RULE);
+	/**
+	 * The number of random states and random walks checked per puzzle.
+	 */
+	private static final int CHECKED_STATES = 50;
+	@Param({"chain", "fused"})
+	public String rules;
+	@Param({"easy", "medium", "hard"})
+	public String corpus;
+	/**
+	 * The fraction of edges set to their solution color in each state.
+	 */
+	@Param({"0.5"})
+	public double fraction;
+	private ImmutableList<InferenceRule> ruleList;
+	private ImmutableList<Puzzle> states;
+
+	@Setup
+	public void setup() {
+		check(corpus);
+		ruleList = rules.equals("fused") ? FUSED : CHAIN;
+		Random random = new Random(0);
+		states = ImmutableList.copyOf(Corpus.puzzles(corpus).stream()
+				.map(p -> Corpus.partialState(p, fraction, random))
+				.iterator());
+	}
+
+	@Benchmark
+	public void fixpoint(Blackhole bh) {
+		for (Puzzle p : states)
+			bh.consume(fixpoint(p, ruleList));
+	}
+
+	public static void main(String[] args) {
+		for (String name : args.length > 0 ? ImmutableList.copyOf(args) : Corpus.NAMES) {
+			int checks = check(name);
+			System.out.format("%s: %d checks agree%n", name, checks);
+		}
+	}
+
+	/**
+	 * Checks that the chain and the fused rule agree on states of each puzzle
+	 * in the given corpus, throwing AssertionError if they don't.
+	 * @return the number of comparisons made
+	 */
+	private static int check(String corpus) {
+		Random random = new Random(0);
+		int checked = 0;
+		for (Puzzle puzzle : Corpus.puzzles(corpus)) {
+			checkScopes(puzzle);
+			PropagatorAccess chain = new PropagatorAccess(puzzle, INCREMENTAL),
+					fused = new PropagatorAccess(puzzle, ImmutableList.of(FUSED_RULE));
+			checked += check(puzzle, chain, fused, random);
+			for (int i = 0; i < CHECKED_STATES; ++i) {
+				Puzzle state = Corpus.partialState(puzzle, random.nextDouble(), random);
+				checked += check(state, chain, fused, random);
+				checked += check(perturb(state, random), chain, fused, random);
+			}
+		}
+		return checked;
+	}
+
+	/**
+	 * Checks the given state's fixpoints, then walks down the search tree from
+	 * it, comparing the propagators after each random decision.
+	 * @return the number of comparisons made
+	 */
+	private static int check(Puzzle state, PropagatorAccess chain, PropagatorAccess fused, Random random) {
+		compare(state, "fixpoint", possibilities(state, CHAIN), possibilities(state, FUSED));
+		Puzzle chainResult = propagateAll(state, ONE_TIME, chain),
+				fusedResult = propagateAll(state, ImmutableList.of(), fused);
+		compare(state, "initial propagation", possibilities(chainResult), possibilities(fusedResult));
+		int checked = 2;
+		for (Puzzle current = chainResult; current != null; ++checked) {
+			Puzzle p = current;
+			int[] undetermined = IntStream.range(0, p.topology().edgeCount())
+					.filter(e -> p.possibilities(e).size() > 1)
+					.toArray();
+			if (undetermined.length == 0) break;
+			int edge = undetermined[random.nextInt(undetermined.length)];
+			ImmutableList<Node.Kind> values = current.possibilities(edge).asList();
+			Puzzle decided = current.set(edge, values.get(random.nextInt(values.size())));
+			chainResult = propagate(decided, edge, chain);
+			fusedResult = propagate(decided, edge, fused);
+			compare(decided, "propagation of " + describe(p.topology().edge(edge)),
+					possibilities(chainResult), possibilities(fusedResult));
+			current = chainResult;
+		}
+		return checked;
+	}
+
+	/**
+	 * Checks that the fused rule's scope for each changed edge is the union of
+	 * the scopes of the separate rules watching that edge.
+	 */
+	private static void checkScopes(Puzzle puzzle) {
+		for (Pair<Node, Node> edge : puzzle.topology().edges()) {
+			Set<Pair<Node, Node>> separate = INCREMENTAL.stream()
+					.filter(r -> r.watches(puzzle, edge))
+					.flatMap(r -> r.scope(puzzle, edge))
+					.collect(Collectors.toSet());
+			Set<Pair<Node, Node>> fused = FUSED_RULE.watches(puzzle, edge) ?
+					FUSED_RULE.scope(puzzle, edge).collect(Collectors.toSet()) :
+					ImmutableSet.of();
+			if (!separate.equals(fused))
+				throw new AssertionError(String.format("scopes for %s disagree on%n%s%nchain: %s%nfused: %s",
+						describe(edge), puzzle, describe(separate), describe(fused)));
+		}
+	}
+
+	private static void compare(Puzzle state, String what,
+			List<ImmutableSet<Node.Kind>> chain, List<ImmutableSet<Node.Kind>> fused) {
+		if (chain == null ? fused != null : !chain.equals(fused))
+			throw new AssertionError(String.format("chain and fused rules disagree (%s) on%n%s%nchain: %s%nfused: %s",
+					what, describe(state), chain, fused));
+	}
+
+	/**
+	 * Applies the given one-time rules, then propagates, returning null on a
+	 * contradiction.
+	 */
+	private static Puzzle propagateAll(Puzzle state, List<InferenceRule> oneTime, PropagatorAccess propagator) {
+		try {
+			for (InferenceRule r : oneTime)
+				state = r.apply(state);
+			return propagator.propagateAll(state);
+		} catch (ContradictionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Propagates a change to the given edge, returning null on a contradiction.
+	 */
+	private static Puzzle propagate(Puzzle state, int edge, PropagatorAccess propagator) {
+		try {
+			return propagator.propagate(state, edge);
+		} catch (ContradictionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the possibilities of each edge at the given rules' fixpoint, or
+	 * null if they find a contradiction.
+	 */
+	private static List<ImmutableSet<Node.Kind>> possibilities(Puzzle state, ImmutableList<InferenceRule> rules) {
+		try {
+			return possibilities(fixpoint(state, rules));
+		} catch (ContradictionException e) {
+			return null;
+		}
+	}
+
+	private static List<ImmutableSet<Node.Kind>> possibilities(Puzzle state) {
+		if (state == null) return null;
+		return IntStream.range(0, state.topology().edgeCount())
+				.mapToObj(state::possibilities)
+				.collect(Collectors.toList());
+	}
+
+	private static Puzzle fixpoint(Puzzle puzzle, ImmutableList<InferenceRule> rules) {
+		for (Puzzle last = null; puzzle != last;) {
+			last = puzzle;
+			for (InferenceRule r : rules)
+				puzzle = r.apply(puzzle);
+		}
+		return puzzle;
+	}
+
+	/**
+	 * Narrows a few random edges to a random one of their possibilities, which
+	 * usually leaves a state with no solution.
+	 */
+	private static Puzzle perturb(Puzzle puzzle, Random random) {
+		int edges = puzzle.topology().edgeCount();
+		for (int i = 0; i < 3; ++i) {
+			int e = random.nextInt(edges);
+			ImmutableList<Node.Kind> possibilities = puzzle.possibilities(e).asList();
+			puzzle = puzzle.set(e, possibilities.get(random.nextInt(possibilities.size())));
+		}
+		return puzzle;
+	}
+
+	private static String describe(Pair<Node, Node> edge) {
+		return String.format("%s(%d,%d)-%s(%d,%d)", edge.first, edge.first.row(), edge.first.col(),
+				edge.second, edge.second.row(), edge.second.col());
+	}
+
+	private static String describe(Set<Pair<Node, Node>> edges) {
+		return edges.stream().map(FusedRuleBenchmark::describe).sorted().collect(Collectors.joining(", ", "[", "]"));
+	}
+
+	private static String describe(Puzzle state) {
+		return state + "\n" + IntStream.range(0, state.topology().edgeCount())
+				.mapToObj(e -> describe(state.topology().edge(e)) + "=" + state.possibilities(e))
+				.collect(Collectors.joining(", "));
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.bench;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.jeffreybosboom.lyne.ContradictionException;
+import com.jeffreybosboom.lyne.Puzzle;
+import com.jeffreybosboom.lyne.rules.ColorColorRule;
+import com.jeffreybosboom.lyne.rules.ColorOctagonRule;
+import com.jeffreybosboom.lyne.rules.CrossingEdgesRule;
+import com.jeffreybosboom.lyne.rules.DesiredEdgesRule;
+import com.jeffreybosboom.lyne.rules.FusedInferenceRule;
+import com.jeffreybosboom.lyne.rules.InferenceRule;
+import com.jeffreybosboom.lyne.rules.OctagonOneEdgeOfColorRule;
+import com.jeffreybosboom.lyne.rules.TerminalTerminalRule;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Times one full application of each inference rule, in isolation, to
+ * partially-solved states of the puzzles in a corpus.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InferenceRuleBenchmark {
+	private static final ImmutableMap<String, Supplier<InferenceRule>> RULES = ImmutableMap.<String, Supplier<InferenceRule>>builder()
+			.put("ColorColor", ColorColorRule::new)
+			.put("ColorOctagon", ColorOctagonRule::new)
+			.put("TerminalTerminal", TerminalTerminalRule::new)
+			.put("DesiredEdges", DesiredEdgesRule::new)
+			.put("CrossingEdges", CrossingEdgesRule::new)
+			.put("OctagonOneEdgeOfColor", OctagonOneEdgeOfColorRule::new)
+			.put("Fused", FusedInferenceRule::new)
+			.build();
+	@Param({"ColorColor", "ColorOctagon", "TerminalTerminal", "DesiredEdges", "CrossingEdges", "OctagonOneEdgeOfColor", "Fused"})
+	public String rule;
+	@Param({"easy", "medium", "hard"})
+	public String corpus;
+	/**
+	 * The fraction of edges set to their solution color in each state.
+	 */
+	@Param({"0.5"})
+	public double fraction;
+	private InferenceRule inferenceRule;
+	private ImmutableList<Puzzle> states;
+
+	@Setup
+	public void setup() {
+		inferenceRule = RULES.get(rule).get();
+		Random random = new Random(0);
+		states = ImmutableList.copyOf(Corpus.puzzles(corpus).stream()
+				.map(p -> Corpus.partialState(p, fraction, random))
+				.iterator());
+	}
+
+	@Benchmark
+	public void apply(Blackhole bh) {
+		for (Puzzle p : states)
+			try {
+				bh.consume(inferenceRule.apply(p));
+			} catch (ContradictionException e) {
+				//states are consistent with a solution, so this shouldn't happen
+				throw new AssertionError(e);
+			}
+	}
+}
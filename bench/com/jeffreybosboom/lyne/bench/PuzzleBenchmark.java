@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.bench;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.jeffreybosboom.lyne.Node;
+import com.jeffreybosboom.lyne.Pair;
+import com.jeffreybosboom.lyne.Puzzle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Times narrowing single edges of fresh puzzles with Puzzle.remove and
+ * Puzzle.set, and reading them with Puzzle.possibilities.  Each benchmark
+ * operation visits every edge of every puzzle in the corpus.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PuzzleBenchmark {
+	@Param({"easy", "medium", "hard"})
+	public String corpus;
+	private ImmutableList<Puzzle> puzzles;
+	/**
+	 * For each puzzle, each edge and its solution color.
+	 */
+	private ImmutableList<ImmutableMap<Pair<Node, Node>, Node.Kind>> solutions;
+
+	@Setup
+	public void setup() {
+		puzzles = Corpus.puzzles(corpus);
+		solutions = ImmutableList.copyOf(puzzles.stream().map(Corpus::solutionEdges).iterator());
+	}
+
+	@Benchmark
+	public void set(Blackhole bh) {
+		for (int i = 0; i < puzzles.size(); ++i) {
+			Puzzle p = puzzles.get(i);
+			solutions.get(i).forEach((e, k) -> bh.consume(p.set(e.first, e.second, k)));
+		}
+	}
+
+	@Benchmark
+	public void remove(Blackhole bh) {
+		for (int i = 0; i < puzzles.size(); ++i) {
+			Puzzle p = puzzles.get(i);
+			//NONE is always possible in fresh puzzles, so this always narrows
+			solutions.get(i).forEach((e, k) -> bh.consume(p.remove(e.first, e.second, Node.Kind.NONE)));
+		}
+	}
+
+	@Benchmark
+	public void possibilities(Blackhole bh) {
+		for (Puzzle p : puzzles)
+			p.edges().forEachOrdered(e -> bh.consume(p.possibilities(e.first, e.second)));
+	}
+}
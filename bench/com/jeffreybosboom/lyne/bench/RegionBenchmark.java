@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.bench;
+
+import com.google.common.collect.ImmutableSet;
+import com.jeffreybosboom.lyne.Colors;
+import com.jeffreybosboom.lyne.Puzzle;
+import com.jeffreybosboom.region.Region;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times connected-component labelling of rendered boards and of screens
+ * containing them, and parsing of rendered boards by Effector.parseImage.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class RegionBenchmark {
+	/**
+	 * The last (largest) puzzle in each corpus is rendered.
+	 */
+	@Param({"easy", "hard"})
+	public String corpus;
+	/**
+	 * The screen size, as WIDTHxHEIGHT.
+	 */
+	@Param({"1920x1080", "3840x2160"})
+	public String screen;
+	private BufferedImage board, screenImage;
+
+	@Setup
+	public void setup() {
+		Puzzle puzzle = Corpus.puzzles(corpus).reverse().get(0);
+		board = BoardImages.render(puzzle);
+		String[] size = screen.split("x");
+		screenImage = BoardImages.renderScreen(puzzle, Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+	}
+
+	@Benchmark
+	public ImmutableSet<Region> connectedComponentsBoard() {
+		return Region.connectedComponents(board, Colors.LYNE_COLORS);
+	}
+
+	/**
+	 * As in the Effector constructor, which finds the game border on the
+	 * whole virtual desktop.
+	 */
+	@Benchmark
+	public ImmutableSet<Region> connectedComponentsScreen() {
+		return Region.connectedComponents(screenImage, ImmutableSet.of(Colors.GAME_BORDER));
+	}
+
+	/**
+	 * As connectedComponentsScreen, using the two-pass algorithm with one
+	 * strip per processor.
+	 */
+	@Benchmark
+	public ImmutableSet<Region> connectedComponentsScreenTwoPass() {
+		return Region.connectedComponents(screenImage, ImmutableSet.of(Colors.GAME_BORDER),
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	@Benchmark
+	public ImmutableSet<Region> summarizeComponentsBoard() {
+		return Region.summarizeComponents(board, Colors.LYNE_COLORS);
+	}
+
+	@Benchmark
+	public ImmutableSet<Region> summarizeComponentsScreen() {
+		return Region.summarizeComponents(screenImage, ImmutableSet.of(Colors.GAME_BORDER));
+	}
+
+	/**
+	 * As the Effector constructor does.
+	 */
+	@Benchmark
+	public ImmutableSet<Region> summarizeComponentsScreenTwoPass() {
+		return Region.summarizeComponents(screenImage, ImmutableSet.of(Colors.GAME_BORDER),
+				Runtime.getRuntime().availableProcessors());
+	}
+}
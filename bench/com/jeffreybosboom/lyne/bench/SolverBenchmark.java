@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.bench;
+
+import com.google.common.collect.ImmutableList;
+import com.jeffreybosboom.lyne.BranchingStrategy;
+import com.jeffreybosboom.lyne.Puzzle;
+import com.jeffreybosboom.lyne.Solver;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Times solving every puzzle in a corpus.  main instead solves boards that
+ * once hung or failed the solver under randomized branching, checking that
+ * each solve returns a solution.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolverBenchmark {
+	/**
+	 * Boards that exposed solver bugs, each solved under many random branching
+	 * orders.  TtT/ttt/ttt hung SubtourRule walking a cycle of a node with
+	 * three triangle edges, not yet rejected mid-propagation.
+	 */
+	private static final ImmutableList<String> REGRESSIONS = ImmutableList.of(
+			"TtT\nttt\nttt"
+	);
+	private static final int REGRESSION_SEEDS = 200;
+	@Param({"easy", "medium", "hard"})
+	public String corpus;
+	@Param({"PERSISTENT", "TRAIL", "LEARNING"})
+	public Solver.Mode mode;
+	@Param({"minDomain", "minDomainDegree", "activity"})
+	public String branching;
+	@Param({"COLOR_FIRST", "NONE_FIRST"})
+	public BranchingStrategy.ValueOrder valueOrder;
+	@Param({"false", "true"})
+	public boolean adaptiveRules;
+	private ImmutableList<Puzzle> puzzles;
+	private Solver.Config config;
+
+	@Setup
+	public void setup() {
+		puzzles = Corpus.puzzles(corpus);
+		BranchingStrategy strategy;
+		switch (branching) {
+			case "minDomain":
+				strategy = BranchingStrategy.minDomain(valueOrder);
+				break;
+			case "minDomainDegree":
+				strategy = BranchingStrategy.minDomainDegree(valueOrder);
+				break;
+			case "activity":
+				strategy = BranchingStrategy.activity(valueOrder);
+				break;
+			default:
+				throw new IllegalArgumentException(branching);
+		}
+		config = Solver.Config.DEFAULT.withMode(mode).withBranching(strategy).withAdaptiveRules(adaptiveRules);
+	}
+
+	@Benchmark
+	public void solve(Blackhole bh) {
+		for (Puzzle p : puzzles)
+			bh.consume(Solver.solve(p, config));
+	}
+
+	public static void main(String[] args) {
+		for (String board : REGRESSIONS) {
+			Puzzle puzzle = Puzzle.fromString(board);
+			for (Solver.Mode mode : Solver.Mode.values())
+				for (int seed = 0; seed < REGRESSION_SEEDS; ++seed) {
+					Solver.Config config = Solver.Config.DEFAULT.withMode(mode)
+							.withBranching(BranchingStrategy.randomized(BranchingStrategy.ValueOrder.COLOR_FIRST, seed));
+					if (Solver.solve(puzzle, config) == null)
+						throw new AssertionError(String.format("no solution for%n%s%nwith %s", board, config));
+				}
+			System.out.format("%s: solved under %d random branching orders in each mode%n",
+					board.replace('\n', '/'), REGRESSION_SEEDS);
+		}
+	}
+}
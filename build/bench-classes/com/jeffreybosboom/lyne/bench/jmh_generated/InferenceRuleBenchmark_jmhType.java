@@ -0,0 +1,4 @@
+package com.jeffreybosboom.lyne.bench.jmh_generated;
+public class InferenceRuleBenchmark_jmhType extends InferenceRuleBenchmark_jmhType_B3 {
+}
+
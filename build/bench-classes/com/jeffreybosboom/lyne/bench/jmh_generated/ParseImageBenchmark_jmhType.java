@@ -0,0 +1,4 @@
+package com.jeffreybosboom.lyne.bench.jmh_generated;
+public class ParseImageBenchmark_jmhType extends ParseImageBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.jeffreybosboom.lyne.bench.jmh_generated;
+public class RegionBenchmark_jmhType extends RegionBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.jeffreybosboom.lyne.bench.jmh_generated;
+public class SolverBenchmark_jmhType extends SolverBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Solves many puzzles concurrently, without touching the screen.  Puzzles are
+ * read in the Puzzle.fromString format, separated by blank lines, from the
+ * files named on the command line or from standard input.  One tab-separated
+ * line is written per puzzle as soon as it is solved:
+ * <pre>index	status	milliseconds	puzzle	paths</pre>
+ * where status is solved, unsolvable, timeout or error, the puzzle's rows are
+ * separated by '/', and the paths are separated by ';'.  For errors, the
+ * exception is written in place of the paths.
+ *
+ * Options:
+ * <ul>
+ * <li>--threads N: solve N puzzles at once (default: one per processor)
+ * <li>--timeout MS: give up on a puzzle after MS milliseconds (default: none)
+ * <li>--ordered: write results in input order
+ * <li>--in-flight N: read at most N puzzles ahead of the results written
+ * (default: 4 per thread), bounding memory use on large inputs
+ * <li>--sat: solve with the SAT backend instead of the native search
+ * <li>--portfolio: race several solvers on each puzzle (see
+ * PortfolioSolver.standard), writing their win statistics to standard error
+ * at the end
+ * </ul>
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class BatchSolver {
+	private final PuzzleSolver engine;
+	private final ExecutorService executor;
+	private final long timeoutNanos;
+	private final boolean ordered;
+	/**
+	 * Permits for puzzles read but not yet written, so that reading blocks when
+	 * the solvers (or, in ordered mode, a slow puzzle) fall behind.
+	 */
+	private final Semaphore inFlight;
+	private final int maxInFlight;
+	private final PrintStream out;
+	/**
+	 * The index of the next puzzle read, counting across calls to solveAll.
+	 */
+	private int nextIndex = 0;
+	//guarded by this
+	private final Map<Integer, String> reorderBuffer = new HashMap<>();
+	private int nextToWrite = 0;
+	public BatchSolver(int threads, long timeoutMillis, boolean ordered, int maxInFlight, PrintStream out) {
+		this(Solver.engine(Solver.Config.DEFAULT.withMode(Solver.Mode.TRAIL)), threads, timeoutMillis, ordered, maxInFlight, out);
+	}
+
+	public BatchSolver(PuzzleSolver engine, int threads, long timeoutMillis, boolean ordered, int maxInFlight, PrintStream out) {
+		this.engine = checkNotNull(engine);
+		checkArgument(threads > 0, "threads: %s", threads);
+		checkArgument(timeoutMillis >= 0, "timeout: %s", timeoutMillis);
+		checkArgument(maxInFlight > 0, "in-flight: %s", maxInFlight);
+		this.executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "BatchSolver");
+			t.setDaemon(true);
+			return t;
+		});
+		this.timeoutNanos = timeoutMillis == 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		this.ordered = ordered;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.maxInFlight = maxInFlight;
+		this.out = out;
+	}
+
+	/**
+	 * Solves each puzzle read from the given reader, writing results as they
+	 * complete.  Returns when all results have been written.
+	 * @param reader the puzzles to solve
+	 * @return the number of puzzles read
+	 */
+	public int solveAll(Reader reader) throws IOException, InterruptedException {
+		BufferedReader in = reader instanceof BufferedReader ? (BufferedReader)reader : new BufferedReader(reader);
+		int firstIndex = nextIndex;
+		List<String> rows = new ArrayList<>();
+		for (String line = in.readLine(); ; line = in.readLine()) {
+			if (line != null && !line.trim().isEmpty()) {
+				rows.add(line.trim());
+				continue;
+			}
+			if (!rows.isEmpty()) {
+				submit(nextIndex++, String.join("\n", rows));
+				rows.clear();
+			}
+			if (line == null) break;
+		}
+		//wait for all results to be written
+		inFlight.acquire(maxInFlight);
+		inFlight.release(maxInFlight);
+		return nextIndex - firstIndex;
+	}
+
+	private void submit(int index, String puzzleString) throws InterruptedException {
+		inFlight.acquire();
+		executor.execute(() -> {
+			String result = null;
+			try {
+				result = solve(index, puzzleString);
+			} finally {
+				//always write, releasing the permit, or solveAll waits forever
+				write(index, result != null ? result : String.format("%d\terror\t0\t%s\t%s", index,
+						puzzleString.replace('\n', '/'), "no result"));
+			}
+		});
+	}
+
+	private String solve(int index, String puzzleString) {
+		String status, detail;
+		Set<List<Node>> solution = null;
+		long start = System.nanoTime();
+		try {
+			Puzzle puzzle = Puzzle.fromString(puzzleString);
+			long deadline = start + timeoutNanos;
+			solution = engine.solve(puzzle, timeoutNanos == Long.MAX_VALUE ?
+					() -> false :
+					() -> System.nanoTime() - deadline > 0);
+			if (solution != null)
+				status = "solved";
+			else if (timeoutNanos != Long.MAX_VALUE && System.nanoTime() - deadline > 0)
+				status = "timeout";
+			else
+				status = "unsolvable";
+			detail = formatPaths(solution);
+		} catch (RuntimeException | Error e) {
+			//including AssertionErrors and StackOverflowErrors from one bad
+			//puzzle; the batch carries on
+			status = "error";
+			detail = e.toString();
+		}
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		return String.format("%d\t%s\t%d\t%s\t%s", index, status, millis,
+				puzzleString.replace('\n', '/'), detail);
+	}
+
+	private static String formatPaths(Set<List<Node>> solution) {
+		if (solution == null) return "";
+		return solution.stream()
+				.map(path -> path.stream()
+						.map(n -> String.format("%s(%d,%d)", n, n.row(), n.col()))
+						.collect(Collectors.joining(" ")))
+				.collect(Collectors.joining(";"));
+	}
+
+	private synchronized void write(int index, String result) {
+		if (!ordered) {
+			out.println(result);
+			inFlight.release();
+			return;
+		}
+		reorderBuffer.put(index, result);
+		for (String r; (r = reorderBuffer.remove(nextToWrite)) != null; ++nextToWrite) {
+			out.println(r);
+			inFlight.release();
+		}
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		long timeoutMillis = 0;
+		boolean ordered = false;
+		int maxInFlight = -1;
+		PuzzleSolver engine = Solver.engine(Solver.Config.DEFAULT.withMode(Solver.Mode.TRAIL));
+		List<String> files = new ArrayList<>();
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+				case "--threads":
+					threads = Integer.parseInt(args[++i]);
+					break;
+				case "--timeout":
+					timeoutMillis = Long.parseLong(args[++i]);
+					break;
+				case "--ordered":
+					ordered = true;
+					break;
+				case "--in-flight":
+					maxInFlight = Integer.parseInt(args[++i]);
+					break;
+				case "--sat":
+					engine = new SatBackend();
+					break;
+				case "--portfolio":
+					engine = PortfolioSolver.standard(Executors.newCachedThreadPool(r -> {
+						Thread t = new Thread(r, "PortfolioSolver");
+						t.setDaemon(true);
+						return t;
+					}));
+					break;
+				default:
+					files.add(args[i]);
+			}
+		}
+		if (maxInFlight == -1)
+			maxInFlight = 4 * threads;
+
+		BatchSolver solver = new BatchSolver(engine, threads, timeoutMillis, ordered, maxInFlight, System.out);
+		try {
+			if (files.isEmpty() || files.equals(Collections.singletonList("-")))
+				solver.solveAll(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+			else
+				for (String file : files)
+					try (Reader r = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+						solver.solveAll(r);
+					}
+		} finally {
+			solver.shutdown();
+		}
+		if (engine instanceof PortfolioSolver)
+			System.err.println(engine);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.jeffreybosboom.region.Region;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Polls a screen rectangle, detecting when its contents change and then stop
+ * changing (i.e., when an animation finishes).  Each capture is divided into
+ * square tiles, which are hashed; two captures are considered equal if all
+ * their tile hashes are.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+final class BoardWatcher {
+	private static final int TILE_SIZE = 32;
+	private final Robot robot;
+	private final Rectangle rect;
+	private final long pollMillis;
+	private final int stablePolls;
+	private final int tileCols, tileRows;
+	/**
+	 * The tile hashes of the image last returned, or null if none has been.
+	 */
+	private long[] lastReturned;
+	/**
+	 * @param robot the robot to capture with
+	 * @param rect the screen rectangle to watch
+	 * @param pollMillis the time between captures
+	 * @param stablePolls the number of consecutive polls with no tile changes
+	 * before the contents are considered stable
+	 */
+	BoardWatcher(Robot robot, Rectangle rect, long pollMillis, int stablePolls) {
+		checkArgument(pollMillis >= 0, "pollMillis: %s", pollMillis);
+		checkArgument(stablePolls > 0, "stablePolls: %s", stablePolls);
+		this.robot = robot;
+		this.rect = new Rectangle(rect);
+		this.pollMillis = pollMillis;
+		this.stablePolls = stablePolls;
+		this.tileCols = (rect.width + TILE_SIZE - 1) / TILE_SIZE;
+		this.tileRows = (rect.height + TILE_SIZE - 1) / TILE_SIZE;
+	}
+
+	/**
+	 * Waits until the watched rectangle differs from the image last returned
+	 * by this method (if any) and has then been stable for the configured
+	 * number of polls, and returns the stable image.
+	 * @return the stable image
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	BufferedImage awaitStableChange() throws InterruptedException {
+		BufferedImage image = robot.createScreenCapture(rect);
+		long[] hashes = hashTiles(image);
+		boolean changed = lastReturned == null || !Arrays.equals(hashes, lastReturned);
+		int unchangedPolls = 0;
+		while (!changed || unchangedPolls < stablePolls) {
+			Thread.sleep(pollMillis);
+			BufferedImage next = robot.createScreenCapture(rect);
+			long[] nextHashes = hashTiles(next);
+			if (Arrays.equals(hashes, nextHashes))
+				++unchangedPolls;
+			else
+				unchangedPolls = 0;
+			image = next;
+			hashes = nextHashes;
+			//a change that reverts before stabilizing isn't a change
+			changed = lastReturned == null || !Arrays.equals(hashes, lastReturned);
+		}
+		lastReturned = hashes;
+		return image;
+	}
+
+	/**
+	 * Hashes each tile of the given image, in row-major tile order.
+	 */
+	private long[] hashTiles(BufferedImage image) {
+		int width = image.getWidth(), height = image.getHeight();
+		//Robot's captures are TYPE_INT_RGB, so this usually avoids a copy
+		int[] rgb = Region.pixels(image);
+		long[] hashes = new long[tileCols * tileRows];
+		for (int y = 0; y < height; ++y) {
+			int tileRow = y / TILE_SIZE;
+			for (int x = 0; x < width; ++x) {
+				int t = tileRow * tileCols + x / TILE_SIZE;
+				hashes[t] = hashes[t] * 31 + rgb[y * width + x];
+			}
+		}
+		return hashes;
+	}
+}
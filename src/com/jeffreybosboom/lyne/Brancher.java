@@ -0,0 +1,289 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import java.util.Arrays;
+
+/**
+ * The per-search state of a BranchingStrategy: a priority structure over the
+ * undetermined edges, kept up to date with the puzzle being searched.
+ *
+ * For a trailed puzzle (Mode.TRAIL and Mode.LEARNING), each chooseEdge call
+ * reads only the trail entries made or rolled back since the previous call,
+ * so keeping up costs O(1) amortized per narrowing.  Persistent puzzles
+ * (Mode.PERSISTENT, the default) have no trail, so each call still compares
+ * every edge's possibility count with the last seen, O(edges) per search
+ * node.  That is the same order as the copy each persistent narrowing makes,
+ * so it doesn't dominate, but only the trailed modes get incremental
+ * selection.  Selection itself never sorts edges in any mode.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+abstract class Brancher {
+	private final BranchingStrategy.ValueOrder valueOrder;
+	/**
+	 * The possibility count of each edge as last seen.
+	 */
+	protected final byte[] counts;
+	/**
+	 * The trailed puzzle we're following, and a copy of the trail edges we've
+	 * seen (the trail itself may have been overwritten since).
+	 */
+	private Puzzle trailed;
+	private int[] journal = new int[64];
+	private int journalSize;
+	Brancher(Puzzle puzzle, BranchingStrategy.ValueOrder valueOrder) {
+		this.valueOrder = valueOrder;
+		this.counts = new byte[puzzle.edgeCount()];
+	}
+
+	/**
+	 * Files every edge; called by subclass constructors once their structures
+	 * are ready.
+	 */
+	protected final void fileAll(Puzzle puzzle) {
+		for (int e = 0; e < counts.length; ++e) {
+			counts[e] = (byte)Integer.bitCount(puzzle.edgeSet(e));
+			refile(e, 0, counts[e]);
+		}
+	}
+
+	/**
+	 * Returns the index of the edge to branch on, or -1 if all edges are
+	 * determined.
+	 */
+	final int chooseEdge(Puzzle puzzle) {
+		sync(puzzle);
+		return select();
+	}
+
+	/**
+	 * Returns the possibilities of the given edge in the order to try them.
+	 */
+	final Node.Kind[] values(Puzzle puzzle, int edge) {
+		return valueOrder.order(puzzle.edgeSet(edge));
+	}
+
+	/**
+	 * Informs this brancher that a contradiction depended on the given edges.
+	 */
+	void conflict(int[] edges) {}
+
+	private void sync(Puzzle puzzle) {
+		if (!puzzle.isTrailed()) {
+			trailed = null;
+			for (int e = 0; e < counts.length; ++e)
+				update(puzzle, e);
+			return;
+		}
+		if (puzzle != trailed) {
+			//first time following this puzzle; rescan, then follow the trail
+			for (int e = 0; e < counts.length; ++e)
+				update(puzzle, e);
+			trailed = puzzle;
+			puzzle.takeTrailLowWater();
+			journalSize = 0;
+			for (int i = 0; i < puzzle.checkpoint(); ++i)
+				journal(puzzle.trailEdge(i));
+			return;
+		}
+		int lowWater = Math.min(puzzle.takeTrailLowWater(), journalSize);
+		//entries from lowWater on were (or may have been) rolled back
+		for (int i = lowWater; i < journalSize; ++i)
+			update(puzzle, journal[i]);
+		journalSize = lowWater;
+		for (int i = lowWater; i < puzzle.checkpoint(); ++i) {
+			int e = puzzle.trailEdge(i);
+			journal(e);
+			update(puzzle, e);
+		}
+	}
+
+	private void journal(int edge) {
+		if (journalSize == journal.length)
+			journal = Arrays.copyOf(journal, journalSize * 2);
+		journal[journalSize++] = edge;
+	}
+
+	private void update(Puzzle puzzle, int edge) {
+		int count = Integer.bitCount(puzzle.edgeSet(edge));
+		if (count != counts[edge]) {
+			int old = counts[edge];
+			counts[edge] = (byte)count;
+			refile(edge, old, count);
+		}
+	}
+
+	/**
+	 * Moves the given edge in the priority structure after its possibility
+	 * count changed (from 0 when first filed).
+	 */
+	protected abstract void refile(int edge, int oldCount, int newCount);
+
+	/**
+	 * Returns the best undetermined edge, or -1 if there are none.
+	 */
+	protected abstract int select();
+
+	/**
+	 * Min-domain branching: buckets of edges by possibility count, each a
+	 * bitset over edge ranks, so the best edge is the lowest-ranked edge in the
+	 * smallest nonempty bucket.
+	 */
+	static final class Domain extends Brancher {
+		private static final int MAX_COUNT = Node.Kind.values().length;
+		/**
+		 * The edge with each rank, and the rank of each edge.
+		 */
+		private final int[] byRank, rank;
+		/**
+		 * Bitsets over ranks, indexed by possibility count (only counts of 2 or
+		 * more are filed).
+		 */
+		private final long[][] buckets;
+		Domain(Puzzle puzzle, BranchingStrategy.ValueOrder valueOrder, int[] byRank) {
+			super(puzzle, valueOrder);
+			this.byRank = byRank;
+			this.rank = new int[byRank.length];
+			for (int r = 0; r < byRank.length; ++r)
+				rank[byRank[r]] = r;
+			this.buckets = new long[MAX_COUNT + 1][(byRank.length + 63) / 64];
+			fileAll(puzzle);
+		}
+
+		@Override
+		protected void refile(int edge, int oldCount, int newCount) {
+			int r = rank[edge];
+			if (oldCount >= 2)
+				buckets[oldCount][r >>> 6] &= ~(1L << r);
+			if (newCount >= 2)
+				buckets[newCount][r >>> 6] |= 1L << r;
+		}
+
+		@Override
+		protected int select() {
+			for (int count = 2; count <= MAX_COUNT; ++count) {
+				long[] bucket = buckets[count];
+				for (int w = 0; w < bucket.length; ++w)
+					if (bucket[w] != 0)
+						return byRank[w * 64 + Long.numberOfTrailingZeros(bucket[w])];
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Activity-based branching: a max-heap of edges by activity.  Determined
+	 * edges are removed lazily when they reach the top, and reinserted when
+	 * rolled back.
+	 */
+	static final class Activity extends Brancher {
+		private static final double DECAY = 0.95, RESCALE_LIMIT = 1e100;
+		private final double[] activity;
+		private double increment = 1;
+		/**
+		 * The heap, and each edge's position in it (or -1).
+		 */
+		private final int[] heap, position;
+		private int heapSize;
+		Activity(Puzzle puzzle, BranchingStrategy.ValueOrder valueOrder) {
+			super(puzzle, valueOrder);
+			this.activity = new double[puzzle.edgeCount()];
+			this.heap = new int[puzzle.edgeCount()];
+			this.position = new int[puzzle.edgeCount()];
+			Arrays.fill(position, -1);
+			fileAll(puzzle);
+		}
+
+		@Override
+		void conflict(int[] edges) {
+			if (edges == null) return;
+			for (int e : edges) {
+				activity[e] += increment;
+				if (position[e] != -1)
+					siftUp(position[e]);
+			}
+			increment /= DECAY;
+			if (increment > RESCALE_LIMIT) {
+				for (int e = 0; e < activity.length; ++e)
+					activity[e] /= RESCALE_LIMIT;
+				increment /= RESCALE_LIMIT;
+			}
+		}
+
+		@Override
+		protected void refile(int edge, int oldCount, int newCount) {
+			if (newCount >= 2 && position[edge] == -1) {
+				heap[heapSize] = edge;
+				position[edge] = heapSize++;
+				siftUp(heapSize - 1);
+			}
+		}
+
+		@Override
+		protected int select() {
+			while (heapSize > 0) {
+				int top = heap[0];
+				if (counts[top] >= 2)
+					return top;
+				//determined; drop it until it's rolled back
+				position[top] = -1;
+				if (--heapSize > 0) {
+					heap[0] = heap[heapSize];
+					position[heap[0]] = 0;
+					siftDown(0);
+				}
+			}
+			return -1;
+		}
+
+		private boolean before(int a, int b) {
+			return activity[a] > activity[b] || (activity[a] == activity[b] && a < b);
+		}
+
+		private void siftUp(int i) {
+			int e = heap[i];
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!before(e, heap[parent])) break;
+				heap[i] = heap[parent];
+				position[heap[i]] = i;
+				i = parent;
+			}
+			heap[i] = e;
+			position[e] = i;
+		}
+
+		private void siftDown(int i) {
+			int e = heap[i];
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= heapSize) break;
+				if (child + 1 < heapSize && before(heap[child + 1], heap[child]))
+					++child;
+				if (!before(heap[child], e)) break;
+				heap[i] = heap[child];
+				position[heap[i]] = i;
+				i = child;
+			}
+			heap[i] = e;
+			position[e] = i;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Chooses which edge the search branches on and in which order that edge's
+ * possibilities are tried.  Strategies are immutable and may be shared
+ * between searches; each search gets its own Brancher, which keeps its
+ * priority structure up to date as the search narrows and rolls back the
+ * puzzle.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public abstract class BranchingStrategy {
+	/**
+	 * The order in which a branch edge's possibilities are tried.
+	 */
+	public enum ValueOrder {
+		/**
+		 * Colors (in Node.Kind order), then NONE: try to extend a path first.
+		 */
+		COLOR_FIRST(false),
+		/**
+		 * NONE, then colors: try to rule out an edge first.
+		 */
+		NONE_FIRST(true);
+
+		/**
+		 * The possibilities in each mask of Node.Kind ordinals, in this order.
+		 */
+		private final Node.Kind[][] ordered = new Node.Kind[1 << Node.Kind.values().length][];
+		private ValueOrder(boolean noneFirst) {
+			for (int mask = 0; mask < ordered.length; ++mask) {
+				final int mask_ = mask;
+				ordered[mask] = Arrays.stream(Node.Kind.values())
+						.filter(k -> (mask_ & Puzzle.mask(k)) != 0)
+						//false sorts first
+						.sorted(Comparator.comparing(k -> (k == Node.Kind.NONE) != noneFirst))
+						.toArray(Node.Kind[]::new);
+			}
+		}
+
+		Node.Kind[] order(int mask) {
+			return ordered[mask];
+		}
+	}
+
+	/**
+	 * Branches on an edge with the fewest possibilities, breaking ties by edge
+	 * order, trying colors first.  This is the strategy Solver has always
+	 * used.
+	 */
+	public static final BranchingStrategy DEFAULT = minDomain(ValueOrder.COLOR_FIRST);
+
+	private final String name;
+	private final ValueOrder valueOrder;
+	BranchingStrategy(String name, ValueOrder valueOrder) {
+		this.name = name;
+		this.valueOrder = valueOrder;
+	}
+
+	/**
+	 * Returns a strategy branching on an edge with the fewest possibilities,
+	 * breaking ties by edge order.
+	 * @param valueOrder the order to try possibilities in
+	 * @return a min-domain strategy
+	 */
+	public static BranchingStrategy minDomain(ValueOrder valueOrder) {
+		return new BranchingStrategy("minDomain", valueOrder) {
+			@Override
+			Brancher newBrancher(Puzzle puzzle) {
+				return new Brancher.Domain(puzzle, valueOrder, IntStream.range(0, puzzle.edgeCount()).toArray());
+			}
+		};
+	}
+
+	/**
+	 * Returns a strategy branching on an edge with the fewest possibilities,
+	 * breaking ties in favor of edges whose nodes are most constrained:
+	 * octagons (which constrain all their edges' colors) count two, terminals
+	 * (which are saturated by a single edge) count one.  Remaining ties are
+	 * broken by edge order.
+	 * @param valueOrder the order to try possibilities in
+	 * @return a min-domain strategy with a degree tie-break
+	 */
+	public static BranchingStrategy minDomainDegree(ValueOrder valueOrder) {
+		return new BranchingStrategy("minDomainDegree", valueOrder) {
+			@Override
+			Brancher newBrancher(Puzzle puzzle) {
+				int[] score = IntStream.range(0, puzzle.edgeCount())
+						.map(e -> constraint(puzzle.edge(e).first) + constraint(puzzle.edge(e).second))
+						.toArray();
+				int[] byRank = IntStream.range(0, puzzle.edgeCount()).boxed()
+						.sorted(Comparator.<Integer>comparingInt(e -> -score[e]).thenComparingInt(e -> e))
+						.mapToInt(Integer::intValue)
+						.toArray();
+				return new Brancher.Domain(puzzle, valueOrder, byRank);
+			}
+		};
+	}
+
+	/**
+	 * Returns a strategy branching on an edge with the fewest possibilities,
+	 * breaking ties by a random order of the edges fixed by the given seed.
+	 * Searches with different seeds explore the puzzle in different orders,
+	 * so racing a few of them (see PortfolioSolver) avoids getting stuck on
+	 * puzzles the edge order happens to handle badly.
+	 * @param valueOrder the order to try possibilities in
+	 * @param seed the seed for the tie-breaking order
+	 * @return a min-domain strategy with a random tie-break
+	 */
+	public static BranchingStrategy randomized(ValueOrder valueOrder, long seed) {
+		return new BranchingStrategy("randomized(" + seed + ")", valueOrder) {
+			@Override
+			Brancher newBrancher(Puzzle puzzle) {
+				List<Integer> byRank = IntStream.range(0, puzzle.edgeCount()).boxed()
+						.collect(Collectors.toList());
+				Collections.shuffle(byRank, new Random(seed));
+				return new Brancher.Domain(puzzle, valueOrder, byRank.stream().mapToInt(Integer::intValue).toArray());
+			}
+		};
+	}
+
+	private static int constraint(Node n) {
+		return n.kind() == Node.Kind.OCTAGON ? 2 : n.isTerminal() ? 1 : 0;
+	}
+
+	/**
+	 * Returns a strategy branching on the undetermined edge most often involved
+	 * in recent contradictions, VSIDS-style: each contradiction bumps the
+	 * activity of the edges it depended on, and older bumps decay.  Ties
+	 * (including before the first contradiction) are broken by edge order.
+	 * @param valueOrder the order to try possibilities in
+	 * @return an activity-based strategy
+	 */
+	public static BranchingStrategy activity(ValueOrder valueOrder) {
+		return new BranchingStrategy("activity", valueOrder) {
+			@Override
+			Brancher newBrancher(Puzzle puzzle) {
+				return new Brancher.Activity(puzzle, valueOrder);
+			}
+		};
+	}
+
+	/**
+	 * Returns a Brancher for one search of the given puzzle.
+	 */
+	abstract Brancher newBrancher(Puzzle puzzle);
+
+	public ValueOrder valueOrder() {
+		return valueOrder;
+	}
+
+	@Override
+	public String toString() {
+		return name + "/" + valueOrder;
+	}
+}
@@ -33,6 +33,8 @@ import java.awt.Robot;
 import java.awt.event.InputEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
@@ -43,14 +45,55 @@ import java.util.stream.Collectors;
  * characteristic border, and assumes the window will not move once found.  Note
  * that Effector may misdetect screenshots of Lyne as the actual Lyne window.
  *
+ * Rather than sleeping a fixed time between puzzles, Effector polls the Lyne
+ * window until it changes and then stabilizes (the transition animation has
+ * finished) and contains a new puzzle.
+ *
  * Effector currently does not automate any of the menus.
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 9/5/2014
  */
 public final class Effector {
+	/**
+	 * The default time between captures while waiting for a new puzzle.
+	 */
+	public static final long DEFAULT_POLL_MILLIS = 50;
+	/**
+	 * The default number of consecutive unchanged captures after which the
+	 * window is considered stable.
+	 */
+	public static final int DEFAULT_STABLE_POLLS = 3;
 	private final Robot robot;
 	private final Rectangle lyneRect;
+	private final BoardWatcher watcher;
+	private final PuzzleSolver solver;
+	/**
+	 * The puzzle last played, or null.
+	 */
+	private Puzzle lastPuzzle;
 	public Effector() throws AWTException, IOException, InterruptedException {
+		this(DEFAULT_POLL_MILLIS, DEFAULT_STABLE_POLLS);
+	}
+
+	/**
+	 * Creates an Effector that waits for new puzzles by capturing the Lyne
+	 * window every pollMillis milliseconds until stablePolls consecutive
+	 * captures are unchanged.
+	 * @param pollMillis the time between captures
+	 * @param stablePolls the number of unchanged captures required
+	 */
+	public Effector(long pollMillis, int stablePolls) throws AWTException, IOException, InterruptedException {
+		this(pollMillis, stablePolls, Solver.engine(Solver.Config.DEFAULT));
+	}
+
+	/**
+	 * Creates an Effector as above that solves puzzles with the given solver.
+	 * @param pollMillis the time between captures
+	 * @param stablePolls the number of unchanged captures required
+	 * @param solver the solver
+	 */
+	public Effector(long pollMillis, int stablePolls, PuzzleSolver solver) throws AWTException, IOException, InterruptedException {
+		this.solver = solver;
 		this.robot = new Robot();
 		robot.setAutoDelay(25);
 
@@ -63,17 +106,23 @@ public final class Effector {
 				virtualBounds = virtualBounds.union(gc.getBounds());
 
 		BufferedImage screenshot = robot.createScreenCapture(virtualBounds);
-		Region gameBorder = Region.connectedComponents(screenshot, ImmutableSet.of(Colors.GAME_BORDER)).stream()
+		Region gameBorder = Region.summarizeComponents(screenshot, ImmutableSet.of(Colors.GAME_BORDER),
+				Runtime.getRuntime().availableProcessors()).stream()
 				.sorted(Comparator.<Region>comparingDouble(r -> r.boundingBox().getWidth() * r.boundingBox().getHeight()).reversed())
 				.findFirst().get();
 		this.lyneRect = gameBorder.boundingBox();
+		this.watcher = new BoardWatcher(robot, lyneRect, pollMillis, stablePolls);
 	}
 
-	public void playPuzzle() {
-		BufferedImage image = robot.createScreenCapture(lyneRect);
-		Pair<Puzzle, ImmutableMap<Node, Region.Point>> parseImage = parseImage(image);
+	/**
+	 * Waits for a new puzzle to appear, then solves and plays it.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void playPuzzle() throws InterruptedException {
+		Pair<Puzzle, ImmutableMap<Node, Region.Point>> parseImage = awaitPuzzle();
+		lastPuzzle = parseImage.first;
 		System.out.println(parseImage.first);
-		Set<List<Node>> solutionPaths = Solver.solve(parseImage.first);
+		Set<List<Node>> solutionPaths = solver.solve(parseImage.first);
 		ImmutableMap<Node, Region.Point> pointMap = parseImage.second;
 		for (List<Node> path : solutionPaths) {
 			System.out.println(path.stream()
@@ -87,24 +136,44 @@ public final class Effector {
 		}
 	}
 
+	/**
+	 * Waits until the Lyne window stabilizes showing a puzzle other than the
+	 * one last played.  The window may stabilize on other screens (e.g., the
+	 * solved previous puzzle, before the transition starts), which either fail
+	 * to parse or parse to the last puzzle, so we keep waiting.
+	 */
+	private Pair<Puzzle, ImmutableMap<Node, Region.Point>> awaitPuzzle() throws InterruptedException {
+		while (true) {
+			BufferedImage image = watcher.awaitStableChange();
+			Pair<Puzzle, ImmutableMap<Node, Region.Point>> parseImage;
+			try {
+				parseImage = parseImage(image);
+			} catch (RuntimeException ex) {
+				continue;
+			}
+			if (lastPuzzle == null || !parseImage.first.toString().equals(lastPuzzle.toString()))
+				return parseImage;
+		}
+	}
+
 	private void mouseMove(Region.Point p) {
 		robot.mouseMove(p.x + lyneRect.getLocation().x, p.y + lyneRect.getLocation().y);
 	}
 
 	private static final int TOLERANCE = 10;
 	public static Pair<Puzzle, ImmutableMap<Node, Region.Point>> parseImage(BufferedImage image) {
-		ImmutableSet<Region> regions = Region.connectedComponents(image, Colors.LYNE_COLORS);
+		ImmutableSet<Region> regions = Region.summarizeComponents(image, Colors.LYNE_COLORS);
 		List<Region> nodeRegions = regions.stream()
 				.filter(r -> Colors.NODE_COLORS.keySet().contains(r.color()))
 				.collect(Collectors.toList());
 		//terminal markers and pips are inside node regions, so must be smaller
-		int maxSize = nodeRegions.stream().mapToInt(r -> r.points().size()).max().getAsInt();
+		int maxSize = nodeRegions.stream().mapToInt(Region::size).max().getAsInt();
 		List<Region> terminalRegions = regions.stream()
-				.filter(r -> r.points().size() < maxSize)
+				.filter(r -> r.size() < maxSize)
 				.filter(r -> r.color() == Colors.TERMINAL_CENTER)
 				.collect(Collectors.toList());
 		List<Region> pipRegions = regions.stream()
-				.filter(r -> r.points().size() < maxSize)
+				.filter(r -> r.size() < maxSize)
 				.filter(r -> r.color() == Colors.PIP)
 				.collect(Collectors.toList());
 
@@ -145,11 +214,46 @@ public final class Effector {
 		return new Pair<>(new Puzzle(puzzle), mapBuilder.build());
 	}
 
+	/**
+	 * Plays a puzzle set.  Options:
+	 * <ul>
+	 * <li>--poll MS: capture the window every MS milliseconds while waiting
+	 * for the next puzzle (default: 50)
+	 * <li>--stable N: wait for N unchanged captures before parsing (default: 3)
+	 * <li>--cache FILE: remember solutions in FILE (see SolutionCache), so
+	 * boards seen in earlier runs aren't solved again
+	 * </ul>
+	 */
 	public static void main(String[] args) throws Throwable {
-		Effector effector = new Effector();
+		long pollMillis = DEFAULT_POLL_MILLIS;
+		int stablePolls = DEFAULT_STABLE_POLLS;
+		Path cacheFile = null;
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+				case "--poll":
+					pollMillis = Long.parseLong(args[++i]);
+					break;
+				case "--stable":
+					stablePolls = Integer.parseInt(args[++i]);
+					break;
+				case "--cache":
+					cacheFile = Paths.get(args[++i]);
+					break;
+				default:
+					throw new IllegalArgumentException("unknown option: " + args[i]);
+			}
+		}
+		PuzzleSolver solver = Solver.engine(Solver.Config.DEFAULT);
+		SolutionCache cache = cacheFile != null ?
+				SolutionCache.open(cacheFile, solver, SolutionCache.DEFAULT_CAPACITY, true) : null;
+		Effector effector = new Effector(pollMillis, stablePolls, cache != null ? cache : solver);
 		for (int i = 0; i < 25; ++i) {
 			effector.playPuzzle();
-			Thread.sleep(2000);
+			//save as we go, as the bot is usually stopped by killing it
+			if (cache != null)
+				cache.flush();
 		}
+		if (cache != null)
+			System.err.println("solution cache: " + cache);
 	}
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * A trailed backtracking search with conflict-directed backjumping and nogood
+ * learning.  The Propagator explains each deduction by the edges it depended
+ * on, so when a branch fails, walking the trail backwards finds the decisions
+ * (branch assignments) the failure depended on.  Failures that don't depend
+ * on the most recent decision jump back past it to the deepest decision they
+ * do depend on, and each exhausted search node teaches a nogood (the
+ * decisions its failure depended on), which the Propagator then propagates
+ * in other subtrees.
+ *
+ * Decision levels are numbered from 1; the search node at level L makes
+ * decision L.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+final class LearningSearch {
+	private static final int NOGOOD_CAPACITY = 1024;
+	/**
+	 * Longer nogoods rarely prune anything, so aren't worth checking.
+	 */
+	private static final int MAX_NOGOOD_LENGTH = 16;
+	private final Puzzle puzzle;
+	private final Propagator propagator;
+	private final BooleanSupplier cancelled;
+	private final Nogoods nogoods;
+	private final TranspositionTable table;
+	private final Brancher brancher;
+	private final SearchStatistics stats;
+	/**
+	 * The propagator's metrics report, or null.
+	 */
+	private final SolveMetrics metrics;
+	/**
+	 * The trail position, edge index and kind mask of each decision, indexed by
+	 * level.  Entries for levels deeper than the current node are stale.
+	 */
+	private final int[] levelStart, decisionEdge, decisionKind;
+	/**
+	 * Edges needed by the current analysis are marked with the current stamp,
+	 * so the marks need not be cleared between analyses.
+	 */
+	private final int[] marks;
+	/**
+	 * The possibilities of each edge before the first decision.
+	 */
+	private final int[] rootSets;
+	private int stamp;
+	/**
+	 * The decision levels the most recent failure depended on.
+	 */
+	private BitSet conflict;
+	/**
+	 * @param puzzle a trailed puzzle on which propagation has reached a
+	 * fixpoint
+	 * @param propagator the propagator, which this search will configure
+	 * @param cancelled polled at each search node; returns true to give up
+	 * @param table a transposition table, or null
+	 * @param brancher the brancher for this search
+	 * @param stats statistics to add to
+	 */
+	LearningSearch(Puzzle puzzle, Propagator propagator, BooleanSupplier cancelled, TranspositionTable table, Brancher brancher, SearchStatistics stats) {
+		assert puzzle.isTrailed();
+		this.puzzle = puzzle;
+		this.propagator = propagator;
+		this.cancelled = cancelled;
+		this.nogoods = new Nogoods(puzzle.edgeCount(), NOGOOD_CAPACITY);
+		this.table = table;
+		this.brancher = brancher;
+		this.stats = stats;
+		this.metrics = propagator.metrics();
+		propagator.explain();
+		propagator.setNogoods(nogoods);
+		//each decision determines an edge, so there are at most edgeCount
+		this.levelStart = new int[puzzle.edgeCount() + 2];
+		this.decisionEdge = new int[puzzle.edgeCount() + 2];
+		this.decisionKind = new int[puzzle.edgeCount() + 2];
+		this.marks = new int[puzzle.edgeCount()];
+		this.rootSets = IntStream.range(0, puzzle.edgeCount()).map(puzzle::edgeSet).toArray();
+	}
+
+	/**
+	 * Searches for a solution.
+	 * @return solution paths (one per color), or null if there are none or the
+	 * search was cancelled
+	 */
+	Set<List<Node>> search() {
+		try {
+			return search(1);
+		} catch (CancellationException e) {
+			//unwound without analyzing, so nothing false was learned
+			return null;
+		} finally {
+			stats.nogoodPrunings += nogoods.prunings();
+		}
+	}
+
+	private Set<List<Node>> search(int level) {
+		if (cancelled.getAsBoolean())
+			throw new CancellationException();
+		++stats.nodes;
+		if (metrics != null)
+			metrics.node(level - 1);
+		if (table != null && table.isRefuted(puzzle)) {
+			conflict = new BitSet();
+			conflict.set(1, level);
+			return null;
+		}
+		int edgeIndex = brancher.chooseEdge(puzzle);
+		if (edgeIndex == -1) {
+			Set<List<Node>> paths = Solver.solutionPaths(puzzle, metrics);
+			if (paths == null) {
+				conflict = explainPathFailure(level - 1);
+				if (table != null)
+					table.refuted(puzzle);
+			}
+			return paths;
+		}
+
+		Pair<Node, Node> edge = puzzle.edge(edgeIndex);
+		//this node fails because each possibility fails, and because those
+		//were the only possibilities
+		BitSet failure = analyze(new int[]{edgeIndex}, level - 1);
+		for (Node.Kind k : brancher.values(puzzle, edgeIndex)) {
+			int checkpoint = puzzle.checkpoint();
+			levelStart[level] = checkpoint;
+			decisionEdge[level] = edgeIndex;
+			decisionKind[level] = Puzzle.mask(k);
+			BitSet childConflict;
+			try {
+				propagator.propagate(puzzle.set(edge.first, edge.second, k), checkpoint);
+				Set<List<Node>> recurse = search(level + 1);
+				if (recurse != null) return recurse;
+				childConflict = conflict;
+			} catch (ContradictionException e) {
+				++stats.conflicts;
+				brancher.conflict(propagator.conflict());
+				childConflict = analyze(propagator.conflict(), level);
+				if (!childConflict.get(level))
+					backjumped(level - deepest(childConflict));
+			} finally {
+				puzzle.rollback(checkpoint);
+			}
+			if (!childConflict.get(level)) {
+				//this decision wasn't involved, so the other possibilities
+				//would fail the same way
+				conflict = childConflict;
+				return null;
+			}
+			childConflict.clear(level);
+			failure.or(childConflict);
+		}
+
+		learn(failure);
+		if (deepest(failure) < level - 1)
+			backjumped(level - 1 - deepest(failure));
+		if (table != null)
+			table.refuted(puzzle);
+		conflict = failure;
+		return null;
+	}
+
+	/**
+	 * Returns the decision levels a failure of Solver.solutionPaths depends on.
+	 * If a color has no path, that depends only on the edges that could have
+	 * that color; otherwise, it depends on all edges.
+	 */
+	private BitSet explainPathFailure(int depth) {
+		Node.Kind color = Solver.unsatisfiedColor(puzzle);
+		if (color == null) {
+			BitSet all = new BitSet();
+			all.set(1, depth + 1);
+			return all;
+		}
+		int mask = Puzzle.mask(color);
+		return analyze(IntStream.range(0, puzzle.edgeCount())
+				.filter(e -> (rootSets[e] & mask) != 0)
+				.toArray(), depth);
+	}
+
+	/**
+	 * Returns the decision levels that the current possibilities of the given
+	 * edges depend on.
+	 * @param edges the edges to explain
+	 * @param depth the number of decisions on the trail
+	 */
+	private BitSet analyze(int[] edges, int depth) {
+		BitSet levels = new BitSet();
+		if (depth == 0) return levels;
+		if (++stamp == 0) {
+			Arrays.fill(marks, 0);
+			stamp = 1;
+		}
+		for (int e : edges)
+			marks[e] = stamp;
+		int d = depth;
+		//entries before the first decision are implied by the puzzle itself
+		for (int i = puzzle.checkpoint() - 1; i >= levelStart[1]; --i) {
+			while (levelStart[d] > i)
+				--d;
+			int edge = puzzle.trailEdge(i);
+			if (marks[edge] != stamp) continue;
+			if (i == levelStart[d]) {
+				levels.set(d);
+				//from here on, the decision alone determines this edge; earlier
+				//entries only matter if an earlier deduction needs them
+				marks[edge] = 0;
+			} else {
+				int[] reason = propagator.reason(i);
+				assert reason != null : "unexplained entry "+i;
+				for (int r : reason)
+					marks[r] = stamp;
+			}
+		}
+		return levels;
+	}
+
+	private void learn(BitSet levels) {
+		int length = levels.cardinality();
+		if (length == 0 || length > MAX_NOGOOD_LENGTH) return;
+		int[] edges = new int[length], kinds = new int[length];
+		int i = 0;
+		for (int l = levels.nextSetBit(0); l >= 0; l = levels.nextSetBit(l + 1), ++i) {
+			edges[i] = decisionEdge[l];
+			kinds[i] = decisionKind[l];
+		}
+		nogoods.add(edges, kinds);
+		++stats.nogoodsLearned;
+	}
+
+	private void backjumped(int levels) {
+		++stats.backjumps;
+		stats.backjumpLevels += levels;
+		stats.maxBackjump = Math.max(stats.maxBackjump, levels);
+	}
+
+	/**
+	 * Returns the deepest level in the given set, or 0 if it is empty.
+	 */
+	private static int deepest(BitSet levels) {
+		return Math.max(levels.length() - 1, 0);
+	}
+}
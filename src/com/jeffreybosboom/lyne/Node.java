@@ -19,7 +19,6 @@
 package com.jeffreybosboom.lyne;
 
 import com.google.common.base.Preconditions;
-import java.util.Comparator;
 
 /**
  * Nodes are the vertices of the puzzle graph.
@@ -83,12 +82,11 @@ public final class Node implements Comparable<Node> {
 		return desiredEdges() == 1;
 	}
 
-	private static final Comparator<Node> COMPARATOR =
-			Comparator.comparingInt(Node::row)
-					.thenComparingInt(Node::col);
 	@Override
 	public int compareTo(Node o) {
-		return COMPARATOR.compare(this, o);
+		//row-major order
+		int c = Integer.compare(row(), o.row());
+		return c != 0 ? c : Integer.compare(col(), o.col());
 	}
 
 	@Override
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import java.util.Arrays;
+
+/**
+ * Learned nogoods: sets of edge assignments (edge = kind) that cannot all hold
+ * in any solution.  A nogood whose assignments all hold is a contradiction; if
+ * all but one hold, the remaining assignment's kind is removed from its edge.
+ *
+ * Each nogood is watched by all its edges.  When the store is full, the
+ * older half of the nogoods is forgotten.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+final class Nogoods {
+	private static final int[] NONE = {};
+	private final int capacity;
+	/**
+	 * The edges and kind masks of each nogood, indexed by nogood id.
+	 */
+	private int[][] edges, kinds;
+	private int count;
+	/**
+	 * The ids of the nogoods containing each edge, indexed by edge index.
+	 * Each array is trimmed to its length, so it can be iterated directly.
+	 */
+	private final int[][] watching;
+	private long prunings;
+	Nogoods(int edgeCount, int capacity) {
+		this.capacity = capacity;
+		this.edges = new int[capacity][];
+		this.kinds = new int[capacity][];
+		this.watching = new int[edgeCount][];
+		Arrays.fill(watching, NONE);
+	}
+
+	/**
+	 * Adds a nogood.
+	 * @param edges the edges of the assignments
+	 * @param kinds the kinds of the assignments, as masks (see Puzzle.mask)
+	 */
+	void add(int[] edges, int[] kinds) {
+		assert edges.length == kinds.length;
+		if (count == capacity)
+			forgetOldest(capacity / 2);
+		this.edges[count] = edges;
+		this.kinds[count] = kinds;
+		for (int e : edges)
+			watch(e, count);
+		++count;
+	}
+
+	private void watch(int edge, int id) {
+		int[] w = watching[edge];
+		w = Arrays.copyOf(w, w.length + 1);
+		w[w.length - 1] = id;
+		watching[edge] = w;
+	}
+
+	private void forgetOldest(int n) {
+		System.arraycopy(edges, n, edges, 0, count - n);
+		System.arraycopy(kinds, n, kinds, 0, count - n);
+		count -= n;
+		Arrays.fill(edges, count, capacity, null);
+		Arrays.fill(kinds, count, capacity, null);
+		Arrays.fill(watching, NONE);
+		for (int id = 0; id < count; ++id)
+			for (int e : edges[id])
+				watch(e, id);
+	}
+
+	int[] watching(int edge) {
+		return watching[edge];
+	}
+
+	int[] edges(int id) {
+		return edges[id];
+	}
+
+	/**
+	 * Checks the given nogood against the given puzzle.
+	 * @return the puzzle, narrowed if all but one of the nogood's assignments
+	 * hold
+	 * @throws ContradictionException if all of the assignments hold
+	 */
+	Puzzle apply(Puzzle puzzle, int id) {
+		int[] e = edges[id], k = kinds[id];
+		int free = -1;
+		for (int i = 0; i < e.length; ++i) {
+			int set = puzzle.edgeSet(e[i]);
+			if ((set & k[i]) == 0) return puzzle; //assignment can't hold
+			if (set != k[i]) {
+				if (free != -1) return puzzle; //two undecided
+				free = i;
+			}
+		}
+		if (free == -1)
+			throw new ContradictionException();
+		++prunings;
+		return puzzle.removeMask(e[free], k[free]);
+	}
+
+	int size() {
+		return count;
+	}
+
+	long prunings() {
+		return prunings;
+	}
+}
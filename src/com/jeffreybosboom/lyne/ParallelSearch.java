@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A subtree of a parallel backtracking search.  Above the depth cutoff, a
+ * ParallelSearch forks one child per possibility of its branch edge; at the
+ * cutoff, it searches its subtree sequentially on a trailed copy of its puzzle.
+ *
+ * Cancellation is cooperative: a task is cancelled if it or any ancestor has
+ * been cancelled, and sequential searches poll for cancellation at every
+ * search node.  In deterministic mode, a task finding a solution cancels its
+ * later siblings, whose solutions would not be reported anyway; otherwise, it
+ * cancels the whole search.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+final class ParallelSearch extends RecursiveTask<Set<List<Node>>> {
+	private static final long serialVersionUID = 1L;
+	private final ParallelSearch parent;
+	/**
+	 * This task's index among its parent's children.
+	 */
+	private final int index;
+	/**
+	 * The puzzle to search, or (if edge is non-null) the puzzle before setting
+	 * edge to kind and propagating.
+	 */
+	private final Puzzle puzzle;
+	private final Pair<Node, Node> edge;
+	private final Node.Kind kind;
+	/**
+	 * A propagator for this task's exclusive use.
+	 */
+	private final Propagator propagator;
+	private final int depthRemaining;
+	private final boolean deterministic;
+	private volatile boolean cancelRequested;
+	private ParallelSearch[] children;
+	ParallelSearch(Puzzle puzzle, Propagator propagator, int depthCutoff, boolean deterministic) {
+		this(null, 0, puzzle, null, null, propagator, depthCutoff, deterministic);
+	}
+
+	private ParallelSearch(ParallelSearch parent, int index, Puzzle puzzle, Pair<Node, Node> edge, Node.Kind kind, Propagator propagator, int depthRemaining, boolean deterministic) {
+		assert !puzzle.isTrailed();
+		this.parent = parent;
+		this.index = index;
+		this.puzzle = puzzle;
+		this.edge = edge;
+		this.kind = kind;
+		this.propagator = propagator;
+		this.depthRemaining = depthRemaining;
+		this.deterministic = deterministic;
+	}
+
+	@Override
+	protected Set<List<Node>> compute() {
+		Set<List<Node>> result = search();
+		if (result != null)
+			solved();
+		return result;
+	}
+
+	private Set<List<Node>> search() {
+		if (cancelled()) return null;
+		Puzzle p;
+		try {
+			p = edge == null ? puzzle : propagator.propagate(puzzle.set(edge.first, edge.second, kind), edge);
+		} catch (ContradictionException e) {
+			return null;
+		}
+
+		if (depthRemaining == 0) {
+			try {
+				return Solver.solve_recurse_trailed(p.trailed(), propagator, this::cancelled);
+			} catch (ContradictionException e) {
+				return null;
+			}
+		}
+
+		Brancher brancher = BranchingStrategy.DEFAULT.newBrancher(p);
+		int branchIndex = brancher.chooseEdge(p);
+		if (branchIndex == -1)
+			return Solver.solutionPaths(p);
+		Pair<Node, Node> branchEdge = p.edge(branchIndex);
+		Node.Kind[] possibilities = brancher.values(p, branchIndex);
+		ParallelSearch[] tasks = new ParallelSearch[possibilities.length];
+		int i = 0;
+		for (Node.Kind k : possibilities) {
+			tasks[i] = new ParallelSearch(this, i, p, branchEdge, k, new Propagator(propagator), depthRemaining - 1, deterministic);
+			++i;
+		}
+		this.children = tasks;
+		//fork all but the first, which we run ourselves
+		for (i = tasks.length - 1; i > 0; --i)
+			tasks[i].fork();
+		Set<List<Node>> result = tasks[0].invoke();
+		for (i = 1; i < tasks.length; ++i) {
+			Set<List<Node>> r = tasks[i].join();
+			if (result == null)
+				result = r;
+		}
+		return result;
+	}
+
+	/**
+	 * Cancels the tasks that can no longer contribute the reported solution
+	 * now that this task has found one.
+	 */
+	private void solved() {
+		if (!deterministic) {
+			ParallelSearch root = this;
+			while (root.parent != null)
+				root = root.parent;
+			root.cancelRequested = true;
+			return;
+		}
+		for (ParallelSearch t = this; t.parent != null; t = t.parent) {
+			ParallelSearch[] siblings = t.parent.children;
+			for (int i = t.index + 1; i < siblings.length; ++i)
+				siblings[i].cancelRequested = true;
+		}
+	}
+
+	private boolean cancelled() {
+		for (ParallelSearch t = this; t != null; t = t.parent)
+			if (t.cancelRequested)
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Races several differently-configured solvers on the same puzzle, reporting
+ * whichever answers first and cancelling the others.  Puzzle difficulty
+ * varies so much between configurations that racing a few is often faster
+ * than any one of them alone.
+ *
+ * Members configured by a Solver.Config share a TranspositionTable per
+ * puzzle, so states one member refutes are skipped by the others.  A member
+ * finding that the puzzle has no solution also wins the race.  A member that
+ * throws drops out, leaving the others to answer; solve() rethrows the first
+ * failure only if every member fails.
+ *
+ * Each member runs as a task in the given executor, which should have a
+ * thread per member (or be a cached pool) for the race to be fair; solve()
+ * blocks waiting for them, so it must not be called from the executor's own
+ * threads unless the executor has spare threads.  Losing native searches
+ * notice cancellation at their next search node or propagation step, even
+ * when a rule is slow to reach a fixpoint, and return their threads promptly.
+ *
+ * PortfolioSolvers keep win statistics per member, so the mix of members can
+ * be tuned for a workload.  They are thread-safe.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class PortfolioSolver implements PuzzleSolver {
+	private static final int DEFAULT_TABLE_CAPACITY = 1 << 16;
+	private final ExecutorService executor;
+	private final ImmutableList<Member> members;
+	private final int tableCapacity;
+	private final LongAdder races = new LongAdder();
+	private PortfolioSolver(ExecutorService executor, ImmutableList<Member> members, int tableCapacity) {
+		this.executor = executor;
+		this.members = members;
+		this.tableCapacity = tableCapacity;
+	}
+
+	/**
+	 * Returns a portfolio of native searches with different modes and
+	 * branching strategies, plus the SAT backend.
+	 * @param executor the executor to run members in
+	 * @return a portfolio solver
+	 */
+	public static PortfolioSolver standard(ExecutorService executor) {
+		Solver.Config learning = Solver.Config.DEFAULT.withMode(Solver.Mode.LEARNING);
+		return builder()
+				.add(learning.withBranching(BranchingStrategy.activity(BranchingStrategy.ValueOrder.COLOR_FIRST)))
+				.add(learning.withBranching(BranchingStrategy.minDomainDegree(BranchingStrategy.ValueOrder.NONE_FIRST)))
+				.add(learning.withBranching(BranchingStrategy.randomized(BranchingStrategy.ValueOrder.COLOR_FIRST, 1)))
+				.add(Solver.Config.DEFAULT.withMode(Solver.Mode.TRAIL))
+				.add("SAT", new SatBackend())
+				.build(executor);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static final class Builder {
+		private final List<Member> members = new ArrayList<>();
+		private int tableCapacity = DEFAULT_TABLE_CAPACITY;
+		private Builder() {}
+
+		/**
+		 * Adds a native search with the given config, named by the config's
+		 * toString.  If the config has a transposition table, it is replaced
+		 * by the portfolio's shared table.
+		 */
+		public Builder add(Solver.Config config) {
+			return add(new Member(config.toString(), checkNotNull(config), null));
+		}
+
+		/**
+		 * Adds the given solver under the given name.
+		 */
+		public Builder add(String name, PuzzleSolver solver) {
+			return add(new Member(checkNotNull(name), null, checkNotNull(solver)));
+		}
+
+		private Builder add(Member member) {
+			checkArgument(members.stream().noneMatch(m -> m.name.equals(member.name)),
+					"duplicate member %s", member.name);
+			members.add(member);
+			return this;
+		}
+
+		/**
+		 * Sets the capacity of the transposition table shared by native
+		 * searches, or 0 to share none.
+		 */
+		public Builder tableCapacity(int tableCapacity) {
+			checkArgument(tableCapacity >= 0, "capacity: %s", tableCapacity);
+			this.tableCapacity = tableCapacity;
+			return this;
+		}
+
+		public PortfolioSolver build(ExecutorService executor) {
+			checkState(!members.isEmpty(), "no members");
+			return new PortfolioSolver(checkNotNull(executor), ImmutableList.copyOf(members), tableCapacity);
+		}
+	}
+
+	@Override
+	public Set<List<Node>> solve(Puzzle puzzle, BooleanSupplier cancelled) {
+		races.increment();
+		long start = System.nanoTime();
+		TranspositionTable table = tableCapacity > 0 && members.stream().anyMatch(m -> m.config != null) ?
+				new TranspositionTable(puzzle, tableCapacity) : null;
+		AtomicBoolean decided = new AtomicBoolean();
+		BooleanSupplier stop = () -> decided.get() || cancelled.getAsBoolean();
+		CompletableFuture<Set<List<Node>>> result = new CompletableFuture<>();
+		AtomicInteger running = new AtomicInteger(members.size()), failed = new AtomicInteger();
+		AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+		for (Member m : members) {
+			PuzzleSolver solver = m.config != null ? Solver.engine(m.config.withTable(table)) : m.solver;
+			executor.execute(() -> {
+				try {
+					Set<List<Node>> paths = solver.solve(puzzle, stop);
+					//null after a stop is a cancellation, not a refutation
+					if (!stop.getAsBoolean() && decided.compareAndSet(false, true)) {
+						m.wins.increment();
+						m.winNanos.add(System.nanoTime() - start);
+						result.complete(paths);
+					}
+				} catch (RuntimeException | Error e) {
+					//one bad configuration shouldn't discard the others' answers
+					firstFailure.compareAndSet(null, e);
+					failed.incrementAndGet();
+				} finally {
+					//if everyone failed, report why; if everyone was cancelled,
+					//there's no answer
+					if (running.decrementAndGet() == 0) {
+						if (failed.get() == members.size())
+							result.completeExceptionally(firstFailure.get());
+						else
+							result.complete(null);
+					}
+				}
+			});
+		}
+		try {
+			return result.join();
+		} catch (CompletionException e) {
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the number of puzzles this portfolio has raced.
+	 */
+	public long races() {
+		return races.sum();
+	}
+
+	/**
+	 * Returns the number of races each member won, by member name, in the
+	 * order members were added.  Races cancelled before any member answered
+	 * have no winner.
+	 */
+	public ImmutableMap<String, Long> wins() {
+		ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+		for (Member m : members)
+			builder.put(m.name, m.wins.sum());
+		return builder.build();
+	}
+
+	@Override
+	public String toString() {
+		long races = races();
+		return members.stream()
+				.map(m -> {
+					long wins = m.wins.sum();
+					return String.format("%s: %d wins (%.1f%%), %.2f ms average", m.name, wins,
+							races == 0 ? 0.0 : 100.0 * wins / races,
+							wins == 0 ? 0.0 : m.winNanos.sum() / 1e6 / wins);
+				})
+				.collect(Collectors.joining("\n", "portfolio of " + members.size() + ", " + races + " races\n", ""));
+	}
+
+	private static final class Member {
+		private final String name;
+		/**
+		 * The native search config, or null if this member is solver.
+		 */
+		private final Solver.Config config;
+		private final PuzzleSolver solver;
+		private final LongAdder wins = new LongAdder(), winNanos = new LongAdder();
+		Member(String name, Solver.Config config, PuzzleSolver solver) {
+			this.name = name;
+			this.config = config;
+			this.solver = solver;
+		}
+	}
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import com.google.common.collect.ImmutableList;
+import com.jeffreybosboom.lyne.rules.IncrementalInferenceRule;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Applies incremental inference rules until no rule can make further
+ * deductions, AC-3 style: each changed edge is queued (at most once at a time),
+ * and dequeuing an edge applies only the rules watching that edge.  Changes
+ * are read off the trail of a trailed Puzzle, so propagating on an immutable
+ * Puzzle propagates on a trailed copy.
+ *
+ * A Propagator can also explain its deductions for conflict analysis (see
+ * explain()): it then records, for each trail entry it causes, the edges the
+ * deduction depended on (the scope of the rule application), and when it
+ * throws, the edges the contradiction depended on.  It can also propagate a
+ * set of learned nogoods alongside the rules, measure the work each rule
+ * does (see measure()), let a RuleScheduler order and defer rule
+ * applications (see schedule()), and give up when cancelled (see
+ * cancelOn()).
+ *
+ * Propagators are specific to one puzzle's nodes (but not possibilities), and
+ * are not thread-safe.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+final class Propagator {
+	private final ImmutableList<IncrementalInferenceRule> rules;
+	/**
+	 * The rules watching each edge, indexed by edge index.
+	 */
+	private final IncrementalInferenceRule[][] watchers;
+	/**
+	 * The scope of each watcher's application to each edge, as edge indices,
+	 * indexed like watchers.
+	 */
+	private final int[][][] scopes;
+	/**
+	 * A circular queue of edge indices.  Each edge is in the queue at most
+	 * once, so the queue never holds more than all the edges.
+	 */
+	private final int[] queue;
+	private final boolean[] queued;
+	private int head, size;
+	/**
+	 * If non-null, the reason for each trail entry, indexed by entry: the
+	 * edges whose possibilities implied it, or null for entries not made by
+	 * this Propagator.
+	 */
+	private int[][] reasons;
+	/**
+	 * If explaining, the edges the last contradiction depended on.
+	 */
+	private int[] conflict;
+	/**
+	 * If non-null, learned nogoods to propagate.
+	 */
+	private Nogoods nogoods;
+	/**
+	 * If non-null, the report to measure propagation into, and the counters
+	 * for each watcher, indexed like watchers.
+	 */
+	private SolveMetrics metrics;
+	private SolveMetrics.RuleMetrics[][] watcherMetrics;
+	/**
+	 * If non-null, the scheduler ordering rule applications, and a circular
+	 * queue of deferred applications as parallel arrays of edge and watcher
+	 * indices, with a flag for each watcher (indexed like watchers) marking
+	 * those in the queue.
+	 */
+	private RuleScheduler scheduler;
+	private int[] deferredEdges, deferredWatchers;
+	private boolean[][] deferred;
+	private int deferredHead, deferredSize;
+	/**
+	 * If non-null, polled before each rule application; returns true to give
+	 * up.
+	 */
+	private BooleanSupplier cancelled;
+	Propagator(Puzzle puzzle, List<? extends IncrementalInferenceRule> rules) {
+		this.rules = ImmutableList.copyOf(rules);
+		this.watchers = new IncrementalInferenceRule[puzzle.edgeCount()][];
+		this.scopes = new int[puzzle.edgeCount()][][];
+		for (int i = 0; i < watchers.length; ++i) {
+			Pair<Node, Node> edge = puzzle.edge(i);
+			watchers[i] = this.rules.stream()
+					.filter(r -> r.watches(puzzle, edge))
+					.toArray(IncrementalInferenceRule[]::new);
+			scopes[i] = Arrays.stream(watchers[i])
+					.map(r -> r.scope(puzzle, edge)
+							.mapToInt(e -> puzzle.edgeIndex(e.first, e.second))
+							.toArray())
+					.toArray(int[][]::new);
+		}
+		this.queue = new int[puzzle.edgeCount()];
+		this.queued = new boolean[puzzle.edgeCount()];
+	}
+
+	/**
+	 * Creates a Propagator for the same puzzle and rules as the given one, for
+	 * use in another thread.
+	 */
+	Propagator(Propagator other) {
+		this.rules = other.rules;
+		this.watchers = other.watchers;
+		this.scopes = other.scopes;
+		this.queue = new int[other.queue.length];
+		this.queued = new boolean[other.queued.length];
+	}
+
+	/**
+	 * Applies each rule in full, then propagates the changes they make.
+	 * @param puzzle the puzzle to propagate
+	 * @return the puzzle after propagation (the same puzzle if trailed)
+	 * @throws ContradictionException if propagation finds a contradiction
+	 * @throws CancellationException if cancelled during propagation
+	 */
+	Puzzle propagateAll(Puzzle puzzle) {
+		Puzzle trailed = puzzle.isTrailed() ? puzzle : puzzle.trailed();
+		int checkpoint = trailed.checkpoint();
+		for (IncrementalInferenceRule r : rules) {
+			pollCancellation();
+			int before = trailed.checkpoint();
+			long start = metrics != null ? System.nanoTime() : 0;
+			try {
+				trailed = r.apply(trailed);
+			} catch (ContradictionException e) {
+				if (metrics != null)
+					measured(metrics.rule(r), start, before, trailed.checkpoint(), true);
+				throw e;
+			}
+			if (metrics != null)
+				measured(metrics.rule(r), start, before, trailed.checkpoint(), false);
+		}
+		return finish(puzzle, propagate(trailed, checkpoint), checkpoint);
+	}
+
+	/**
+	 * Propagates a change to the given edge.
+	 * @param puzzle the puzzle to propagate
+	 * @param changedEdge the edge that changed
+	 * @return the puzzle after propagation (the same puzzle if trailed)
+	 * @throws ContradictionException if propagation finds a contradiction
+	 * @throws CancellationException if cancelled during propagation
+	 */
+	Puzzle propagate(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		Puzzle trailed = puzzle.isTrailed() ? puzzle : puzzle.trailed();
+		int checkpoint = trailed.checkpoint();
+		enqueue(trailed.edgeIndex(changedEdge.first, changedEdge.second));
+		return finish(puzzle, propagate(trailed, checkpoint), checkpoint);
+	}
+
+	/**
+	 * Propagates the changes recorded in the given trailed puzzle's trail since
+	 * the given checkpoint.
+	 * @param puzzle a trailed puzzle
+	 * @param checkpoint the checkpoint to propagate changes since
+	 * @return the given puzzle
+	 * @throws ContradictionException if propagation finds a contradiction
+	 * @throws CancellationException if cancelled during propagation
+	 */
+	Puzzle propagate(Puzzle puzzle, int checkpoint) {
+		assert puzzle.isTrailed();
+		int trailHead = checkpoint;
+		if (reasons != null)
+			explain(checkpoint, puzzle.checkpoint(), null);
+		if (metrics != null)
+			++metrics.fixpoints;
+		try {
+			while (true) {
+				pollCancellation();
+				for (; trailHead < puzzle.checkpoint(); ++trailHead)
+					enqueue(puzzle.trailEdge(trailHead));
+				if (size == 0) {
+					//deferred rules run only when the others are done
+					if (deferredSize == 0) break;
+					int edgeIndex = deferredEdges[deferredHead], i = deferredWatchers[deferredHead];
+					deferredHead = (deferredHead + 1) % deferredEdges.length;
+					--deferredSize;
+					deferred[edgeIndex][i] = false;
+					puzzle = apply(puzzle, edgeIndex, i);
+					continue;
+				}
+				int edgeIndex = dequeue();
+				if (metrics != null)
+					++metrics.propagatedEdges;
+				if (scheduler == null)
+					for (int i = 0; i < watchers[edgeIndex].length; ++i)
+						puzzle = apply(puzzle, edgeIndex, i);
+				else
+					for (int i : scheduler.order(edgeIndex))
+						if (scheduler.isDeferred(edgeIndex, i))
+							defer(edgeIndex, i);
+						else
+							puzzle = apply(puzzle, edgeIndex, i);
+				if (nogoods != null)
+					for (int id : nogoods.watching(edgeIndex)) {
+						int before = puzzle.checkpoint();
+						try {
+							puzzle = nogoods.apply(puzzle, id);
+						} catch (ContradictionException e) {
+							//nogoods throw before narrowing
+							if (metrics != null)
+								++metrics.contradictions;
+							conflict = nogoods.edges(id);
+							throw e;
+						}
+						if (reasons != null)
+							explain(before, puzzle.checkpoint(), nogoods.edges(id));
+					}
+			}
+		} finally {
+			//leave the queue empty even if we threw
+			while (size > 0)
+				dequeue();
+			for (; deferredSize > 0; --deferredSize) {
+				deferred[deferredEdges[deferredHead]][deferredWatchers[deferredHead]] = false;
+				deferredHead = (deferredHead + 1) % deferredEdges.length;
+			}
+		}
+		return puzzle;
+	}
+
+	/**
+	 * Applies the given watcher of the given edge.
+	 */
+	private Puzzle apply(Puzzle puzzle, int edgeIndex, int i) {
+		int before = puzzle.checkpoint();
+		long start = metrics != null || scheduler != null ? System.nanoTime() : 0;
+		try {
+			puzzle = watchers[edgeIndex][i].apply(puzzle, puzzle.edge(edgeIndex));
+		} catch (ContradictionException e) {
+			if (metrics != null || scheduler != null)
+				measured(edgeIndex, i, start, before, puzzle.checkpoint(), true);
+			//the application may have narrowed some edges first
+			if (reasons != null)
+				explain(before, puzzle.checkpoint(), scopes[edgeIndex][i]);
+			conflict = scopes[edgeIndex][i];
+			throw e;
+		}
+		if (metrics != null || scheduler != null)
+			measured(edgeIndex, i, start, before, puzzle.checkpoint(), false);
+		if (reasons != null)
+			explain(before, puzzle.checkpoint(), scopes[edgeIndex][i]);
+		return puzzle;
+	}
+
+	private void defer(int edgeIndex, int i) {
+		if (deferred[edgeIndex][i]) return;
+		deferred[edgeIndex][i] = true;
+		int tail = (deferredHead + deferredSize) % deferredEdges.length;
+		deferredEdges[tail] = edgeIndex;
+		deferredWatchers[tail] = i;
+		++deferredSize;
+	}
+
+	/**
+	 * Starts recording reasons for the trail entries this Propagator causes.
+	 * Only useful when propagating trailed puzzles.
+	 */
+	void explain() {
+		if (reasons == null)
+			reasons = new int[64][];
+	}
+
+	/**
+	 * Propagates the given nogoods along with the rules.  The nogoods may
+	 * change between propagations, but not during one.
+	 */
+	void setNogoods(Nogoods nogoods) {
+		this.nogoods = nogoods;
+	}
+
+	/**
+	 * Starts measuring propagation into the given report.  Rules are measured
+	 * by SolveMetrics.rule, and each contradiction thrown is counted.
+	 */
+	void measure(SolveMetrics metrics) {
+		this.metrics = metrics;
+		rules.forEach(metrics::rule);
+		this.watcherMetrics = new SolveMetrics.RuleMetrics[watchers.length][];
+		for (int e = 0; e < watchers.length; ++e)
+			watcherMetrics[e] = Arrays.stream(watchers[e])
+					.map(metrics::rule)
+					.toArray(SolveMetrics.RuleMetrics[]::new);
+	}
+
+	/**
+	 * Starts letting a RuleScheduler order rule applications and defer
+	 * unproductive rules until the others reach a fixpoint.
+	 */
+	void schedule() {
+		int[][] watcherRules = new int[watchers.length][];
+		for (int e = 0; e < watchers.length; ++e)
+			watcherRules[e] = Arrays.stream(watchers[e]).mapToInt(rules::indexOf).toArray();
+		this.scheduler = new RuleScheduler(rules, watcherRules);
+		int capacity = Arrays.stream(watchers).mapToInt(w -> w.length).sum();
+		this.deferredEdges = new int[Math.max(capacity, 1)];
+		this.deferredWatchers = new int[deferredEdges.length];
+		this.deferred = new boolean[watchers.length][];
+		for (int e = 0; e < watchers.length; ++e)
+			deferred[e] = new boolean[watchers[e].length];
+	}
+
+	/**
+	 * Starts polling the given supplier during propagation, so a search can
+	 * be cancelled while propagating, not just between search nodes.  Once it
+	 * returns true, propagation throws CancellationException, leaving the
+	 * puzzle partly propagated; the search should roll back or discard it.
+	 */
+	void cancelOn(BooleanSupplier cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	private void pollCancellation() {
+		if (cancelled != null && cancelled.getAsBoolean())
+			throw new CancellationException();
+	}
+
+	/**
+	 * Returns this Propagator's scheduler, or null.
+	 */
+	RuleScheduler scheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Returns the report this Propagator measures into, or null.
+	 */
+	SolveMetrics metrics() {
+		return metrics;
+	}
+
+	private void measured(int edgeIndex, int i, long start, int before, int after, boolean contradiction) {
+		long nanos = System.nanoTime() - start;
+		if (metrics != null) {
+			SolveMetrics.RuleMetrics rule = watcherMetrics[edgeIndex][i];
+			rule.nanos += nanos;
+			++rule.invocations;
+			rule.narrowings += after - before;
+			if (contradiction) {
+				++rule.contradictions;
+				++metrics.contradictions;
+			}
+		}
+		if (scheduler != null)
+			scheduler.applied(edgeIndex, i, nanos, after - before, contradiction);
+	}
+
+	private void measured(SolveMetrics.RuleMetrics rule, long start, int before, int after, boolean contradiction) {
+		rule.nanos += System.nanoTime() - start;
+		++rule.invocations;
+		rule.narrowings += after - before;
+		if (contradiction) {
+			++rule.contradictions;
+			++metrics.contradictions;
+		}
+	}
+
+	/**
+	 * Returns the reason for the given trail entry, or null if this
+	 * Propagator did not make it.  Only valid while explaining and until the
+	 * entry is rolled back.
+	 */
+	int[] reason(int entry) {
+		return reasons[entry];
+	}
+
+	/**
+	 * Returns the edges the last contradiction thrown by propagate depended
+	 * on.  Only valid while explaining.
+	 */
+	int[] conflict() {
+		return conflict;
+	}
+
+	private void explain(int from, int to, int[] reason) {
+		if (to > reasons.length)
+			reasons = Arrays.copyOf(reasons, Math.max(to, reasons.length * 2));
+		Arrays.fill(reasons, from, to, reason);
+	}
+
+	private static Puzzle finish(Puzzle original, Puzzle trailed, int checkpoint) {
+		if (original.isTrailed()) return trailed;
+		return trailed.checkpoint() == checkpoint ? original : trailed.persistent();
+	}
+
+	private void enqueue(int edgeIndex) {
+		if (queued[edgeIndex]) return;
+		queued[edgeIndex] = true;
+		queue[(head + size) % queue.length] = edgeIndex;
+		++size;
+	}
+
+	private int dequeue() {
+		int edgeIndex = queue[head];
+		head = (head + 1) % queue.length;
+		--size;
+		queued[edgeIndex] = false;
+		return edgeIndex;
+	}
+}
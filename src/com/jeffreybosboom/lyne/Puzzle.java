@@ -19,12 +19,12 @@
 package com.jeffreybosboom.lyne;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Set;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -34,75 +34,233 @@ import java.util.stream.Stream;
  * @since 8/8/2014
  */
 public final class Puzzle {
-	private static final int[][] NEIGHBORHOOD = {
-		{-1, -1}, {-1, 0}, {-1, 1},
-		{0, -1}, {0, 1},
-		{1, -1}, {1, 0}, {1, 1},
-	};
-	private final Node[][] nodes;
-	private final ImmutableMap<Node, ImmutableSet<Node>> neighbors;
-	//TODO: consider replacing with edgeSets.keySet() -- not sure of performance
-	//impact, as edges() is hammered by CrossingEdgesRule
-	private final ImmutableSet<Pair<Node, Node>> edges;
-	private final ImmutableMap<Pair<Node, Node>, ImmutableSet<Node.Kind>> edgeSets;
+	/**
+	 * The board's nodes and edges, shared by all Puzzles for that board.
+	 */
+	private final Topology topology;
+	/**
+	 * The possibilities for each edge, as a bitmask of Node.Kind ordinals
+	 * (see MASK_SETS), indexed by edge index.  Unless this Puzzle is trailed,
+	 * never modified after construction; narrowing clones the array.
+	 */
+	private final byte[] edgeSets;
+	/**
+	 * If non-null, this Puzzle is trailed: narrowings modify edgeSets in place,
+	 * recording the old possibilities in the trail, and return this Puzzle.
+	 */
+	private final Trail trail;
+	/**
+	 * The Zobrist hash of edgeSets: the XOR of zobrist(edge, edgeSets[edge])
+	 * over all edges.  Only modified (along with edgeSets) if trailed.
+	 */
+	private long hash;
 	public Puzzle(Node[][] nodes) {
 		assert Arrays.stream(nodes).mapToInt(x -> x.length).distinct().count() == 1 : "array not rectangular";
-		this.nodes = nodes;
-
-		ImmutableMap.Builder<Node, ImmutableSet<Node>> neighborsBuilder = ImmutableMap.builder();
-		nodes().forEachOrdered(n -> {
-			neighborsBuilder.put(n, ImmutableSet.copyOf(
-					Arrays.stream(NEIGHBORHOOD)
-							.map(p -> new int[]{n.row() + p[0], n.col() + p[1]})
-							.filter(p -> 0 <= p[0] && p[0] < nodes.length)
-							.filter(p -> 0 <= p[1] && p[1] < nodes[0].length)
-							.map(p -> nodes[p[0]][p[1]])
-							.filter(x -> x != null)
-							.iterator()
-			));
-		});
-		this.neighbors = neighborsBuilder.build();
-
-		this.edges = ImmutableSet.copyOf(nodes().
-				filter(n -> n != null)
-				.flatMap(a -> neighbors(a).map(b -> Pair.sorted(a, b)))
-				.iterator());
+		this.topology = new Topology(nodes);
 
 		//Only include colors if nodes of that color are present.
-		ImmutableSet<Node.Kind> maximalEdgeSet = ImmutableSet.<Node.Kind>builder()
-				.addAll(Arrays.stream(nodes)
-						.flatMap(Arrays::stream)
-						.filter(x -> x != null)
-						.map(Node::kind)
-						.filter(Node.Kind::isColored).iterator())
-				.add(Node.Kind.NONE)
-				.build();
-		ImmutableMap.Builder<Pair<Node, Node>, ImmutableSet<Node.Kind>> edgeSetsBuilder = ImmutableMap.builder();
-		edges().forEachOrdered(e -> edgeSetsBuilder.put(e, maximalEdgeSet));
-		this.edgeSets = edgeSetsBuilder.build();
-	}
-
-	private Puzzle(Puzzle puzzle, ImmutableMap<Pair<Node, Node>, ImmutableSet<Node.Kind>> edgeSets) {
-		this.nodes = puzzle.nodes;
-		this.edges = puzzle.edges;
-		this.neighbors = puzzle.neighbors;
+		int maximalEdgeSet = mask(Node.Kind.NONE);
+		for (Iterator<Node> it = nodes().iterator(); it.hasNext();) {
+			Node n = it.next();
+			if (n.kind().isColored())
+				maximalEdgeSet |= mask(n.kind());
+		}
+		this.edgeSets = new byte[topology.edgeCount()];
+		Arrays.fill(edgeSets, (byte)maximalEdgeSet);
+		this.trail = null;
+		for (int i = 0; i < edgeSets.length; ++i)
+			hash ^= zobrist(i, maximalEdgeSet);
+	}
+
+	private Puzzle(Puzzle puzzle, byte[] edgeSets, Trail trail, long hash) {
+		this.topology = puzzle.topology;
 		this.edgeSets = edgeSets;
+		this.trail = trail;
+		this.hash = hash;
+	}
+
+	private Puzzle withEdgeSet(int edge, int newEdgeSet) {
+		assert 0 <= edge && edge < edgeSets.length : "not an edge: "+edge;
+		assert (newEdgeSet & mask(Node.Kind.OCTAGON)) == 0;
+		assert newEdgeSet != 0;
+		long newHash = hash ^ zobrist(edge, edgeSets[edge]) ^ zobrist(edge, newEdgeSet);
+		if (trail != null) {
+			trail.push(edge, edgeSets[edge]);
+			edgeSets[edge] = (byte)newEdgeSet;
+			hash = newHash;
+			return this;
+		}
+		byte[] newEdgeSets = edgeSets.clone();
+		newEdgeSets[edge] = (byte)newEdgeSet;
+		return new Puzzle(this, newEdgeSets, null, newHash);
+	}
+
+	/**
+	 * Returns a trailed copy of this Puzzle.  A trailed Puzzle is mutable:
+	 * remove, restrict and set narrow it in place and return it, recording each
+	 * narrowing so it can be undone by rollback().  Trailed Puzzles are not
+	 * thread-safe and should not escape the search using them.
+	 * @return a trailed copy of this puzzle
+	 */
+	Puzzle trailed() {
+		return new Puzzle(this, edgeSets.clone(), new Trail(), hash);
+	}
+
+	/**
+	 * Returns an immutable copy of this Puzzle, or this Puzzle if it is not
+	 * trailed.
+	 * @return an immutable puzzle with the same possibilities as this one
+	 */
+	Puzzle persistent() {
+		return trail == null ? this : new Puzzle(this, edgeSets.clone(), null, hash);
+	}
+
+	/**
+	 * Returns a checkpoint that rollback() can restore this Puzzle to.  The
+	 * checkpoint increases with each narrowing until the next rollback.  For
+	 * an immutable Puzzle, always returns 0.
+	 */
+	int checkpoint() {
+		return trail == null ? 0 : trail.size();
 	}
 
-	private Puzzle withEdgeSet(Pair<Node, Node> edge, ImmutableSet<Node.Kind> newEdgeSet) {
-		assert neighbors(edge.first).anyMatch(Predicate.isEqual(edge.second));
-		assert edge.first.compareTo(edge.second) < 0;
-		assert edgeSets.containsKey(edge) : "not an edge: "+edge;
-		assert !newEdgeSet.contains(Node.Kind.OCTAGON);
-		assert !newEdgeSet.isEmpty();
-		//TODO: no-change and ContradictionException checks could be moved here
-		//from set and remove.
-		ImmutableMap.Builder<Pair<Node, Node>, ImmutableSet<Node.Kind>> edgeSetBuilder = ImmutableMap.builder();
-		edgeSets.entrySet().stream()
-				.filter(e -> !e.getKey().equals(edge))
-				.forEachOrdered(edgeSetBuilder::put);
-		edgeSetBuilder.put(edge, newEdgeSet);
-		return new Puzzle(this, edgeSetBuilder.build());
+	boolean isTrailed() {
+		return trail != null;
+	}
+
+	/**
+	 * Returns the index of the edge narrowed by the given trail entry.  Entries
+	 * between two checkpoints are the narrowings made between them.
+	 */
+	int trailEdge(int entry) {
+		return trail.edge(entry);
+	}
+
+	/**
+	 * Returns the lowest checkpoint this trailed Puzzle has been rolled back to
+	 * since the last call to this method, so that trail entries from there on
+	 * may have changed since then.  Intended for a single observer.
+	 */
+	int takeTrailLowWater() {
+		return trail.takeLowWater();
+	}
+
+	/**
+	 * Undoes all narrowings made to this trailed Puzzle since the given
+	 * checkpoint was taken.
+	 */
+	void rollback(int checkpoint) {
+		assert trail != null : "rolling back an untrailed puzzle";
+		for (int i = trail.size() - 1; i >= checkpoint; --i) {
+			int edge = trail.edge(i);
+			hash ^= zobrist(edge, edgeSets[edge]) ^ zobrist(edge, trail.oldSet(i));
+			edgeSets[edge] = trail.oldSet(i);
+		}
+		trail.truncate(checkpoint);
+	}
+
+	/**
+	 * Returns a Zobrist hash of this Puzzle's edge possibilities.  Puzzles with
+	 * the same nodes and possibilities have the same hash, however they were
+	 * reached; the hashes of Puzzles with different nodes are unrelated.
+	 */
+	long zobristHash() {
+		return hash;
+	}
+
+	/**
+	 * Returns the Zobrist key of the given edge having the given possibility
+	 * mask.  Rather than keeping a table of random keys, we mix the
+	 * (edge, mask) pair with the SplitMix64 finalizer.
+	 */
+	private static long zobrist(int edge, int mask) {
+		long z = ((long)edge << 5 | mask) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns the number of edges with more than one possibility.
+	 */
+	int undeterminedEdgeCount() {
+		int count = 0;
+		for (byte b : edgeSets)
+			if (Integer.bitCount(b) > 1)
+				++count;
+		return count;
+	}
+
+	/**
+	 * The possibility set for each bitmask of Node.Kind ordinals, so that
+	 * possibilities() need not allocate.
+	 */
+	private static final ImmutableList<ImmutableSet<Node.Kind>> MASK_SETS;
+	static {
+		ImmutableList.Builder<ImmutableSet<Node.Kind>> builder = ImmutableList.builder();
+		for (int mask = 0; mask < 1 << Node.Kind.values().length; ++mask) {
+			final int mask_ = mask;
+			builder.add(Sets.immutableEnumSet(Arrays.stream(Node.Kind.values())
+					.filter(k -> (mask_ & mask(k)) != 0)
+					.collect(Collectors.toList())));
+		}
+		MASK_SETS = builder.build();
+	}
+
+	/**
+	 * Returns the bit representing the given kind in possibility bitmasks
+	 * (see possibilityMask()).
+	 */
+	public static int mask(Node.Kind kind) {
+		return 1 << kind.ordinal();
+	}
+
+	private static int mask(Set<Node.Kind> kinds) {
+		int mask = 0;
+		for (Node.Kind k : kinds)
+			mask |= mask(k);
+		return mask;
+	}
+
+	int edgeIndex(Node a, Node b) {
+		return topology.edgeIndex(a, b);
+	}
+
+	/**
+	 * Returns the edge with the given index, in canonical order.
+	 */
+	Pair<Node, Node> edge(int index) {
+		return topology.edge(index);
+	}
+
+	int edgeCount() {
+		return edgeSets.length;
+	}
+
+	/**
+	 * Returns the possibilities for the edge with the given index, as a bitmask
+	 * of Node.Kind ordinals.
+	 */
+	int edgeSet(int edge) {
+		return edgeSets[edge];
+	}
+
+	/**
+	 * Returns the possibilities for the edge with the given index as a bitmask
+	 * (see mask()).  Equivalent to possibilities(edge), but for rules that
+	 * count possibilities in tight loops without going through sets.
+	 */
+	public int possibilityMask(int edge) {
+		return edgeSets[edge];
+	}
+
+	/**
+	 * Removes the possibilities in the given bitmask from the edge with the
+	 * given index, as remove() does for one possibility.
+	 * @throws ContradictionException if no possibilities would remain
+	 */
+	public Puzzle removeMask(int edge, int mask) {
+		return set(edge, edgeSets[edge] & ~mask);
 	}
 
 	/**
@@ -131,11 +289,20 @@ public final class Puzzle {
 	}
 
 	public Node at(int row, int col) {
-		return nodes[row][col];
+		return topology.at(row, col);
+	}
+
+	/**
+	 * Returns this puzzle's board structure, which is shared with all puzzles
+	 * derived from it.
+	 * @return this puzzle's topology
+	 */
+	public Topology topology() {
+		return topology;
 	}
 
 	public Stream<Node> nodes() {
-		return Arrays.stream(nodes).flatMap(Arrays::stream).filter(x -> x != null);
+		return topology.nodes().stream();
 	}
 
 	/**
@@ -144,14 +311,11 @@ public final class Puzzle {
 	 * @return pairs of terminals
 	 */
 	public Stream<Pair<Node, Node>> terminals() {
-		return nodes().filter(Node::isTerminal)
-				.collect(Collectors.groupingBy(Node::kind))
-				.values().stream()
-				.map(l -> {assert l.size() == 2 : l; return Pair.sorted(l.get(0), l.get(1));});
+		return topology.terminals().stream();
 	}
 
 	public Stream<Node> neighbors(Node n) {
-		return neighbors.get(n).stream();
+		return Arrays.stream(topology.neighbors(topology.nodeIndex(n))).mapToObj(topology::node);
 	}
 
 	/**
@@ -160,12 +324,19 @@ public final class Puzzle {
 	 * @return a stream of edges in this puzzle
 	 */
 	public Stream<Pair<Node, Node>> edges() {
-		return edges.stream();
+		return topology.edges().stream();
 	}
 
 	public ImmutableSet<Node.Kind> possibilities(Node a, Node b) {
-		Pair<Node, Node> p = Pair.sorted(a, b);
-		return edgeSets.get(p);
+		return possibilities(edgeIndex(a, b));
+	}
+
+	/**
+	 * Returns the possibilities for the edge with the given index (see
+	 * Topology).
+	 */
+	public ImmutableSet<Node.Kind> possibilities(int edge) {
+		return MASK_SETS.get(edgeSets[edge]);
 	}
 
 	/**
@@ -175,20 +346,30 @@ public final class Puzzle {
 	 * a ContradictionException is thrown.
 	 */
 	public Puzzle remove(Node a, Node b, Node.Kind possibility) {
-		Pair<Node, Node> p = Pair.sorted(a, b);
-		ImmutableSet<Node.Kind> possibilities = possibilities(a, b);
-		if (!possibilities.contains(possibility))
+		return remove(edgeIndex(a, b), possibility);
+	}
+
+	/**
+	 * As remove(Node, Node, Node.Kind), for the edge with the given index.
+	 */
+	public Puzzle remove(int edge, Node.Kind possibility) {
+		int possibilities = edgeSets[edge];
+		if ((possibilities & mask(possibility)) == 0)
 			return this;
-		if (possibilities.size() == 1)
+		if (possibilities == mask(possibility))
 			throw new ContradictionException();
-
-		ImmutableSet<Node.Kind> newSet = ImmutableSet.copyOf(
-				possibilities.stream().filter(x -> x != possibility).iterator());
-		return withEdgeSet(p, newSet);
+		return withEdgeSet(edge, possibilities & ~mask(possibility));
 	}
 
 	public Puzzle restrict(Node a, Node b, Set<Node.Kind> possibilities) {
-		return set(a, b, Sets.intersection(possibilities, possibilities(a, b)));
+		return restrict(edgeIndex(a, b), possibilities);
+	}
+
+	/**
+	 * As restrict(Node, Node, Set), for the edge with the given index.
+	 */
+	public Puzzle restrict(int edge, Set<Node.Kind> possibilities) {
+		return set(edge, mask(possibilities) & edgeSets[edge]);
 	}
 
 	/**
@@ -198,28 +379,36 @@ public final class Puzzle {
 	 * a ContradictionException is thrown.
 	 */
 	public Puzzle set(Node a, Node b, Node.Kind possibility) {
-		return set(a, b, ImmutableSet.of(possibility));
+		return set(edgeIndex(a, b), possibility);
+	}
+
+	/**
+	 * As set(Node, Node, Node.Kind), for the edge with the given index.
+	 */
+	public Puzzle set(int edge, Node.Kind possibility) {
+		return set(edge, mask(possibility));
 	}
 
-	private Puzzle set(Node a, Node b, Set<Node.Kind> possibilities) {
+	private Puzzle set(int edge, int possibilities) {
 		//private because rules actually want to call restrict instead
-		Pair<Node, Node> p = Pair.sorted(a, b);
-		ImmutableSet<Node.Kind> currentPossibilities = possibilities(a, b);
-		if (possibilities.isEmpty() || !currentPossibilities.containsAll(possibilities))
+		int currentPossibilities = edgeSets[edge];
+		if (possibilities == 0 || (possibilities & ~currentPossibilities) != 0)
 			throw new ContradictionException();
-		if (currentPossibilities.equals(possibilities))
+		if (currentPossibilities == possibilities)
 			return this;
 
-		return withEdgeSet(p, ImmutableSet.copyOf(possibilities));
+		return withEdgeSet(edge, possibilities);
 	}
 
 	@Override
 	public String toString() {
 		//TODO: concise way to print edge sets?
 		StringBuilder sb = new StringBuilder();
-		for (Node[] r : nodes) {
-			for (Node n : r)
+		for (int r = 0; r < topology.rows(); ++r) {
+			for (int c = 0; c < topology.cols(); ++c) {
+				Node n = topology.at(r, c);
 				sb.append(n == null ? " " : n.toString());
+			}
 			sb.append("\n");
 		}
 		return sb.toString().trim();
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A way of solving puzzles: the native search engine (Solver.engine) or the
+ * SAT backend (SatBackend).  Implementations are thread-safe, so one instance
+ * may solve many puzzles concurrently.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+@FunctionalInterface
+public interface PuzzleSolver {
+	/**
+	 * Solves the given puzzle, giving up when the given supplier returns true.
+	 * @param puzzle the puzzle to solve
+	 * @param cancelled polled regularly; returns true to give up
+	 * @return solution paths (one per color), or null if there are none or the
+	 * search was cancelled
+	 */
+	public Set<List<Node>> solve(Puzzle puzzle, BooleanSupplier cancelled);
+
+	/**
+	 * Solves the given puzzle.
+	 * @param puzzle the puzzle to solve
+	 * @return solution paths (one per color), or null
+	 */
+	public default Set<List<Node>> solve(Puzzle puzzle) {
+		return solve(puzzle, () -> false);
+	}
+}
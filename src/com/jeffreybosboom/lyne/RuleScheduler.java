@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import com.google.common.collect.ImmutableList;
+import com.jeffreybosboom.lyne.rules.IncrementalInferenceRule;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Decides the order in which a Propagator applies the rules watching a
+ * changed edge, based on how much each rule has recently narrowed per unit of
+ * time.  Rules that yield much less than the best rule are deferred: the
+ * Propagator queues their applications and runs them only when no eager rule
+ * has work left, so propagation still reaches the same fixpoint, but the
+ * cheap productive rules get to narrow the puzzle (or find a contradiction)
+ * first.  Deferred rules keep being measured when they do run, so a rule
+ * that becomes productive again is reinstated.
+ *
+ * Measurements decay by half at each review, so the schedule follows the
+ * search as it moves between parts of the board.  Schedule changes and the
+ * final schedule of each search are logged at Level.FINE, so they can be
+ * compared with the static order.
+ *
+ * Schedulers belong to one Propagator and are not thread-safe.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+final class RuleScheduler {
+	private static final Logger LOGGER = Logger.getLogger(RuleScheduler.class.getName());
+	/**
+	 * The number of rule applications between reviews of the schedule.
+	 */
+	private static final int REVIEW_INTERVAL = 1024;
+	/**
+	 * Rules yielding less than this fraction of the best rule's yield are
+	 * deferred.
+	 */
+	private static final double DEFER_RATIO = 0.05;
+	/**
+	 * A contradiction ends the propagation, so it's worth several narrowings.
+	 */
+	private static final double CONTRADICTION_WEIGHT = 8;
+	private final ImmutableList<IncrementalInferenceRule> rules;
+	/**
+	 * The rule index of each watcher, indexed like Propagator's watchers.
+	 */
+	private final int[][] watcherRules;
+	/**
+	 * The watcher indices of each edge, in the order to apply them.
+	 */
+	private final int[][] order;
+	/**
+	 * Decayed time spent and narrowings (plus weighted contradictions) per
+	 * rule, indexed by rule index.
+	 */
+	private final double[] nanos, yields;
+	private final boolean[] deferred;
+	/**
+	 * Each rule's position in the current order, indexed by rule index.
+	 */
+	private final int[] rank;
+	private int untilReview = REVIEW_INTERVAL;
+	private long reviews, changes;
+	RuleScheduler(ImmutableList<IncrementalInferenceRule> rules, int[][] watcherRules) {
+		this.rules = rules;
+		this.watcherRules = watcherRules;
+		this.order = new int[watcherRules.length][];
+		for (int e = 0; e < watcherRules.length; ++e)
+			order[e] = IntStream.range(0, watcherRules[e].length).toArray();
+		this.nanos = new double[rules.size()];
+		this.yields = new double[rules.size()];
+		this.deferred = new boolean[rules.size()];
+		this.rank = IntStream.range(0, rules.size()).toArray();
+	}
+
+	/**
+	 * Returns the indices of the given edge's watchers in the order to apply
+	 * them.  The array is owned by this scheduler and changes at reviews.
+	 */
+	int[] order(int edge) {
+		return order[edge];
+	}
+
+	/**
+	 * Returns true if the given watcher of the given edge is deferred.
+	 */
+	boolean isDeferred(int edge, int watcher) {
+		return deferred[watcherRules[edge][watcher]];
+	}
+
+	/**
+	 * Records an application of the given watcher of the given edge.
+	 * @param nanos the time the application took
+	 * @param narrowings the number of narrowings it made
+	 * @param contradiction whether it found a contradiction
+	 */
+	void applied(int edge, int watcher, long nanos, int narrowings, boolean contradiction) {
+		int rule = watcherRules[edge][watcher];
+		this.nanos[rule] += nanos;
+		this.yields[rule] += narrowings + (contradiction ? CONTRADICTION_WEIGHT : 0);
+		if (--untilReview == 0)
+			review();
+	}
+
+	private void review() {
+		untilReview = REVIEW_INTERVAL;
+		++reviews;
+		//rules never applied yet go first, so they get measured
+		double[] score = new double[rules.size()];
+		double best = 0;
+		for (int r = 0; r < score.length; ++r) {
+			score[r] = nanos[r] == 0 ? Double.NaN : yields[r] / nanos[r];
+			if (!Double.isNaN(score[r]))
+				best = Math.max(best, score[r]);
+		}
+		boolean changed = false;
+		for (int r = 0; r < score.length; ++r) {
+			boolean defer = !Double.isNaN(score[r]) && score[r] < DEFER_RATIO * best;
+			changed |= defer != deferred[r];
+			deferred[r] = defer;
+		}
+		int[] newRank = new int[rules.size()];
+		Integer[] byScore = IntStream.range(0, rules.size()).boxed()
+				.sorted(Comparator.<Integer>comparingDouble(r -> Double.isNaN(score[r]) ? -Double.MAX_VALUE : -score[r])
+						.thenComparingInt(r -> rank[r]))
+				.toArray(Integer[]::new);
+		for (int i = 0; i < byScore.length; ++i)
+			newRank[byScore[i]] = i;
+		if (!Arrays.equals(newRank, rank)) {
+			changed = true;
+			System.arraycopy(newRank, 0, rank, 0, rank.length);
+			for (int e = 0; e < order.length; ++e) {
+				int[] watched = watcherRules[e];
+				order[e] = IntStream.range(0, watched.length).boxed()
+						.sorted(Comparator.comparingInt(w -> rank[watched[w]]))
+						.mapToInt(Integer::intValue)
+						.toArray();
+			}
+		}
+		if (changed) {
+			++changes;
+			if (LOGGER.isLoggable(Level.FINE))
+				LOGGER.fine(String.format("review %d: %s", reviews, Arrays.stream(byScore)
+						.map(r -> String.format("%s%s %.3g/us", rules.get(r).getClass().getSimpleName(),
+								deferred[r] ? " (deferred)" : "", score[r] * 1000))
+						.collect(Collectors.joining(", "))));
+		}
+		for (int r = 0; r < score.length; ++r) {
+			nanos[r] /= 2;
+			yields[r] /= 2;
+		}
+	}
+
+	/**
+	 * Logs the final schedule at Level.FINE.  Called when the search using
+	 * this scheduler finishes.
+	 */
+	void finished() {
+		LOGGER.log(Level.FINE, "finished: {0}", this);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d reviews, %d schedule changes, order %s", reviews, changes,
+				IntStream.range(0, rules.size()).boxed()
+						.sorted(Comparator.comparingInt(r -> rank[r]))
+						.map(r -> rules.get(r).getClass().getSimpleName() + (deferred[r] ? " (deferred)" : ""))
+						.collect(Collectors.joining(", ")));
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import static com.jeffreybosboom.lyne.sat.SatSolver.lit;
+import com.jeffreybosboom.lyne.sat.SatSolver;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Solves puzzles by encoding them in CNF for the embedded SatSolver.  After
+ * the inference rules narrow the puzzle, each edge gets a variable for each
+ * kind it might have, with clauses requiring:
+ * <ul>
+ * <li> each edge has exactly one kind;
+ * <li> each colored node has exactly its desired edges of its color, and no
+ * edges of other colors;
+ * <li> each octagon has exactly its desired colored edges, and an even number
+ * of each color;
+ * <li> crossing edges aren't both used.
+ * </ul>
+ * These local constraints allow a color's edges to form the path plus
+ * detached cycles.  Connectivity is added lazily: when a model's edges don't
+ * form paths, a cut clause is added for each detached component, requiring an
+ * edge of its color to leave it, and the solver is run again, keeping what it
+ * learned.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class SatBackend implements PuzzleSolver {
+	private static final Node.Kind[] KINDS = Node.Kind.values();
+	private static final Node.Kind[] COLORS = Arrays.stream(KINDS).filter(Node.Kind::isColored).toArray(Node.Kind[]::new);
+
+	@Override
+	public Set<List<Node>> solve(Puzzle puzzle, BooleanSupplier cancelled) {
+		Puzzle p;
+		try {
+			p = Solver.infer(puzzle.persistent());
+		} catch (ContradictionException e) {
+			return null;
+		}
+		Encoding encoding = new Encoding(p);
+		while (true) {
+			switch (encoding.sat.solve(cancelled)) {
+				case UNSATISFIABLE:
+				case CANCELLED:
+					return null;
+				case SATISFIABLE:
+					break;
+				default:
+					throw new AssertionError();
+			}
+			Set<List<Node>> paths = encoding.decode();
+			if (paths != null)
+				return paths;
+			if (!encoding.addCuts())
+				encoding.blockModel();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SAT";
+	}
+
+	private static final class Encoding {
+		private final Puzzle puzzle;
+		private final Topology topology;
+		private final SatSolver sat = new SatSolver();
+		/**
+		 * A variable constrained false, standing in for kinds an edge can't
+		 * have so the constraints needn't special-case them.
+		 */
+		private final int falseVar;
+		/**
+		 * The variable for each edge having each kind, indexed by edge index
+		 * and Kind ordinal.
+		 */
+		private final int[][] vars;
+		/**
+		 * The kind of each edge in the current model.
+		 */
+		private final Node.Kind[] model;
+		Encoding(Puzzle puzzle) {
+			this.puzzle = puzzle;
+			this.topology = puzzle.topology();
+			this.falseVar = sat.newVar();
+			sat.addClause(lit(falseVar, false));
+			this.vars = new int[topology.edgeCount()][KINDS.length];
+			this.model = new Node.Kind[topology.edgeCount()];
+
+			for (int e = 0; e < topology.edgeCount(); ++e) {
+				Set<Node.Kind> possibilities = puzzle.possibilities(e);
+				for (Node.Kind k : KINDS)
+					vars[e][k.ordinal()] = possibilities.contains(k) ? sat.newVar() : falseVar;
+				int[] lits = new int[KINDS.length];
+				for (int k = 0; k < KINDS.length; ++k)
+					lits[k] = lit(vars[e][k], true);
+				exactly(lits, 1);
+			}
+
+			for (int n = 0; n < topology.nodeCount(); ++n) {
+				Node node = topology.node(n);
+				int[] edges = topology.incidentEdges(n);
+				int[] lits = new int[edges.length];
+				if (node.kind().isColored()) {
+					for (int i = 0; i < edges.length; ++i) {
+						lits[i] = lit(vars[edges[i]][node.kind().ordinal()], true);
+						for (Node.Kind k : COLORS)
+							if (k != node.kind())
+								sat.addClause(lit(vars[edges[i]][k.ordinal()], false));
+					}
+					exactly(lits, node.desiredEdges());
+				} else if (node.kind() == Node.Kind.OCTAGON) {
+					for (int i = 0; i < edges.length; ++i)
+						lits[i] = lit(vars[edges[i]][Node.Kind.NONE.ordinal()], false);
+					exactly(lits, node.desiredEdges());
+					for (Node.Kind k : COLORS) {
+						for (int i = 0; i < edges.length; ++i)
+							lits[i] = lit(vars[edges[i]][k.ordinal()], true);
+						even(lits);
+					}
+				}
+			}
+
+			for (int e = 0; e < topology.edgeCount(); ++e) {
+				int f = topology.crossingEdge(e);
+				if (f > e)
+					sat.addClause(lit(vars[e][Node.Kind.NONE.ordinal()], true),
+							lit(vars[f][Node.Kind.NONE.ordinal()], true));
+			}
+		}
+
+		/**
+		 * Requires exactly count of the given literals be true, by forbidding
+		 * each too-large set of true or false literals.  Nodes have at most
+		 * eight edges, so enumerating subsets is cheap.
+		 */
+		private void exactly(int[] lits, int count) {
+			for (int subset = 0; subset < 1 << lits.length; ++subset) {
+				int size = Integer.bitCount(subset);
+				if (size == count + 1)
+					//not all of these can be true
+					sat.addClause(select(lits, subset, true));
+				if (size == lits.length - count + 1)
+					//not all of these can be false
+					sat.addClause(select(lits, subset, false));
+			}
+			if (count > lits.length)
+				sat.addClause();
+		}
+
+		/**
+		 * Requires an even number of the given literals be true, by forbidding
+		 * each odd assignment.
+		 */
+		private void even(int[] lits) {
+			for (int subset = 0; subset < 1 << lits.length; ++subset) {
+				if (Integer.bitCount(subset) % 2 == 0) continue;
+				int[] clause = new int[lits.length];
+				for (int i = 0; i < lits.length; ++i)
+					clause[i] = (subset & (1 << i)) != 0 ? lits[i] ^ 1 : lits[i];
+				sat.addClause(clause);
+			}
+		}
+
+		/**
+		 * Returns the literals in the given subset, negated if the given flag
+		 * is set.
+		 */
+		private static int[] select(int[] lits, int subset, boolean negate) {
+			int[] clause = new int[Integer.bitCount(subset)];
+			int size = 0;
+			for (int i = 0; i < lits.length; ++i)
+				if ((subset & (1 << i)) != 0)
+					clause[size++] = negate ? lits[i] ^ 1 : lits[i];
+			return clause;
+		}
+
+		/**
+		 * Reads the model into this.model and returns its solution paths, or
+		 * null if it has none.
+		 */
+		Set<List<Node>> decode() {
+			for (int e = 0; e < topology.edgeCount(); ++e)
+				for (Node.Kind k : KINDS)
+					if (vars[e][k.ordinal()] != falseVar && sat.value(vars[e][k.ordinal()]))
+						model[e] = k;
+			Puzzle solved = puzzle.trailed();
+			for (int e = 0; e < topology.edgeCount(); ++e)
+				solved.set(e, model[e]);
+			return Solver.solutionPaths(solved);
+		}
+
+		/**
+		 * Adds a cut clause for each component of a color's edges in the model
+		 * that doesn't contain all the nodes of that color.
+		 * @return true if any cuts were added
+		 */
+		boolean addCuts() {
+			boolean added = false;
+			int[] component = new int[topology.nodeCount()];
+			Deque<Integer> queue = new ArrayDeque<>();
+			for (Node.Kind color : COLORS) {
+				int required = topology.nodesOf(color).length;
+				if (required == 0) continue;
+				Arrays.fill(component, -1);
+				for (int start = 0; start < topology.nodeCount(); ++start) {
+					if (component[start] != -1 || !hasEdgeOf(start, color)) continue;
+					//flood-fill the component over edges of this color
+					component[start] = start;
+					queue.add(start);
+					int requiredInside = 0;
+					while (!queue.isEmpty()) {
+						int n = queue.remove();
+						if (topology.node(n).kind() == color)
+							++requiredInside;
+						int[] neighbors = topology.neighbors(n), edges = topology.incidentEdges(n);
+						for (int i = 0; i < edges.length; ++i)
+							if (model[edges[i]] == color && component[neighbors[i]] == -1) {
+								component[neighbors[i]] = start;
+								queue.add(neighbors[i]);
+							}
+					}
+					if (requiredInside == required) continue;
+					addCut(component, start, color, requiredInside > 0);
+					added = true;
+				}
+			}
+			return added;
+		}
+
+		private boolean hasEdgeOf(int node, Node.Kind color) {
+			for (int e : topology.incidentEdges(node))
+				if (model[e] == color)
+					return true;
+			return false;
+		}
+
+		/**
+		 * Adds a cut for the given component, which is missing some nodes of
+		 * the given color: an edge of the color must leave it.  If it contains
+		 * nodes of the color, that's always true; if it contains only
+		 * octagons, it's true if any of its edges have the color.
+		 */
+		private void addCut(int[] component, int id, Node.Kind color, boolean hasRequired) {
+			int[] boundary = new int[topology.edgeCount() + 1];
+			int size = 0;
+			for (int e = 0; e < topology.edgeCount(); ++e) {
+				boolean first = component[topology.edgeFirst(e)] == id, second = component[topology.edgeSecond(e)] == id;
+				if (first != second && vars[e][color.ordinal()] != falseVar)
+					boundary[size++] = lit(vars[e][color.ordinal()], true);
+			}
+			if (hasRequired) {
+				sat.addClause(Arrays.copyOf(boundary, size));
+				return;
+			}
+			for (int e = 0; e < topology.edgeCount(); ++e)
+				if (model[e] == color && component[topology.edgeFirst(e)] == id) {
+					boundary[size] = lit(vars[e][color.ordinal()], false);
+					sat.addClause(Arrays.copyOf(boundary, size + 1));
+				}
+		}
+
+		/**
+		 * Forbids the current model.
+		 */
+		void blockModel() {
+			int[] clause = new int[topology.edgeCount()];
+			for (int e = 0; e < topology.edgeCount(); ++e)
+				clause[e] = lit(vars[e][model[e].ordinal()], false);
+			sat.addClause(clause);
+		}
+	}
+}
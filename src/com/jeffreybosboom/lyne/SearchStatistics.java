@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+/**
+ * Counters describing a learning search (Solver.Mode.LEARNING).  Statistics
+ * accumulate over all searches they are passed to.  Not thread-safe.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class SearchStatistics {
+	long nodes, conflicts, nogoodsLearned, nogoodPrunings, backjumps, backjumpLevels;
+	int maxBackjump;
+	public SearchStatistics() {}
+
+	/**
+	 * Returns the number of search nodes (calls choosing a branch edge or
+	 * checking a solution) visited.
+	 */
+	public long nodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of contradictions found by propagation.
+	 */
+	public long conflicts() {
+		return conflicts;
+	}
+
+	/**
+	 * Returns the number of nogoods learned.
+	 */
+	public long nogoodsLearned() {
+		return nogoodsLearned;
+	}
+
+	/**
+	 * Returns the number of possibilities removed by learned nogoods.
+	 */
+	public long nogoodPrunings() {
+		return nogoodPrunings;
+	}
+
+	/**
+	 * Returns the number of failures that backjumped over at least one
+	 * decision, rather than backtracking to the most recent one.
+	 */
+	public long backjumps() {
+		return backjumps;
+	}
+
+	/**
+	 * Returns the total number of decisions skipped by backjumps.
+	 */
+	public long backjumpLevels() {
+		return backjumpLevels;
+	}
+
+	/**
+	 * Returns the most decisions skipped by one backjump.
+	 */
+	public int maxBackjump() {
+		return maxBackjump;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d nodes, %d conflicts, %d nogoods learned (%d prunings), %d backjumps (%d levels, max %d)",
+				nodes, conflicts, nogoodsLearned, nogoodPrunings, backjumps, backjumpLevels, maxBackjump);
+	}
+}
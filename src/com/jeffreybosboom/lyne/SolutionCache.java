@@ -0,0 +1,338 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Remembers the solutions of boards already solved, so puzzle sets played
+ * again aren't searched again.  A SolutionCache wraps another solver, which
+ * it calls only for boards it hasn't seen.
+ *
+ * Boards are keyed by their grid (as Puzzle.toString, without trimming
+ * empty positions), normalized under the 8 rotations and reflections of the
+ * board: the key is the least of the transformed grids, and solutions are
+ * stored in that orientation and mapped back to the board being looked up.
+ * Only solved boards are cached, as a null result may be a cancellation.
+ *
+ * The cache holds at most a given number of boards, evicting the least
+ * recently used.  A cache opened on a file loads it by mapping it into
+ * memory, and flush() (or close()) writes the boards back in least-recently
+ * used order, so the next run starts warm with the same recency order.  The
+ * file is replaced atomically, so a crash leaves the previous contents.
+ *
+ * SolutionCaches are thread-safe, but the wrapped solver is called outside
+ * the lock, so concurrent solves of the same new board all search it.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class SolutionCache implements PuzzleSolver, Closeable {
+	public static final int DEFAULT_CAPACITY = 1 << 14;
+	private static final int MAGIC = 0x4c594e53; //"LYNS"
+	private static final int VERSION = 1;
+	/**
+	 * The transforms, as {transpose, flip rows, flip columns} applied in
+	 * reverse order: columns and rows are flipped first, then the board is
+	 * transposed.
+	 */
+	private static final boolean[][] TRANSFORMS = new boolean[8][];
+	static {
+		for (int t = 0; t < TRANSFORMS.length; ++t)
+			TRANSFORMS[t] = new boolean[]{(t & 4) != 0, (t & 2) != 0, (t & 1) != 0};
+	}
+	private final PuzzleSolver solver;
+	private final int capacity;
+	private final boolean normalize;
+	/**
+	 * The file to persist to, or null.
+	 */
+	private final Path file;
+	/**
+	 * Encoded solutions (see encode()) by key, in access order.  Guarded by
+	 * this.
+	 */
+	private final LinkedHashMap<String, byte[]> entries;
+	private boolean dirty;
+	private long hits, misses;
+	private SolutionCache(PuzzleSolver solver, int capacity, boolean normalize, Path file) {
+		checkArgument(capacity > 0, "capacity: %s", capacity);
+		this.solver = checkNotNull(solver);
+		this.capacity = capacity;
+		this.normalize = normalize;
+		this.file = file;
+		this.entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+				return size() > SolutionCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Creates an in-memory cache holding up to the given number of boards.
+	 * @param solver the solver to call for uncached boards
+	 * @param capacity the maximum number of boards to remember
+	 * @param normalize whether to key boards under their rotations and
+	 * reflections, or only as given
+	 */
+	public SolutionCache(PuzzleSolver solver, int capacity, boolean normalize) {
+		this(solver, capacity, normalize, null);
+	}
+
+	/**
+	 * Opens a cache persisted in the given file, loading the file if it
+	 * exists.  If the file holds more boards than the capacity, the least
+	 * recently used are dropped.
+	 * @param file the file to load from and flush to
+	 * @param solver the solver to call for uncached boards
+	 * @param capacity the maximum number of boards to remember
+	 * @param normalize whether to key boards under their rotations and
+	 * reflections, or only as given; must match the setting the file was
+	 * written with
+	 * @return a cache
+	 * @throws IOException if the file exists but can't be read or is not a
+	 * cache file
+	 */
+	public static SolutionCache open(Path file, PuzzleSolver solver, int capacity, boolean normalize) throws IOException {
+		SolutionCache cache = new SolutionCache(solver, capacity, normalize, checkNotNull(file));
+		if (Files.exists(file))
+			cache.load();
+		return cache;
+	}
+
+	@Override
+	public Set<List<Node>> solve(Puzzle puzzle, BooleanSupplier cancelled) {
+		Set<List<Node>> solution = get(puzzle);
+		if (solution != null)
+			return solution;
+		solution = solver.solve(puzzle, cancelled);
+		if (solution != null)
+			put(puzzle, solution);
+		return solution;
+	}
+
+	/**
+	 * Returns the cached solution to the given board, or null if it isn't
+	 * cached.
+	 */
+	public Set<List<Node>> get(Puzzle puzzle) {
+		int[] transform = new int[1];
+		String key = key(puzzle, transform);
+		byte[] encoded;
+		synchronized (this) {
+			encoded = entries.get(key);
+			if (encoded == null) {
+				++misses;
+				return null;
+			}
+			++hits;
+		}
+		return decode(encoded, puzzle, transform[0]);
+	}
+
+	/**
+	 * Caches the given solution to the given board.
+	 */
+	public void put(Puzzle puzzle, Set<List<Node>> solution) {
+		int[] transform = new int[1];
+		String key = key(puzzle, transform);
+		byte[] encoded = encode(solution, puzzle, transform[0]);
+		synchronized (this) {
+			entries.put(key, encoded);
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Returns the number of boards cached.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of lookups that found a cached solution.
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that didn't.
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Writes the cached boards to this cache's file, if it has one and boards
+	 * were added since the last flush.
+	 * @throws IOException if the file can't be written
+	 */
+	public synchronized void flush() throws IOException {
+		if (file == null || !dirty) return;
+		int bytes = 12;
+		for (Map.Entry<String, byte[]> e : entries.entrySet())
+			bytes += 2 + e.getKey().length() + 2 + e.getValue().length;
+		ByteBuffer buffer = ByteBuffer.allocate(bytes);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(entries.size());
+		//iteration doesn't count as access, so this is least-recently used first
+		for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+			byte[] key = e.getKey().getBytes(StandardCharsets.US_ASCII);
+			buffer.putShort((short)key.length).put(key);
+			buffer.putShort((short)e.getValue().length).put(e.getValue());
+		}
+		buffer.flip();
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(false);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		dirty = false;
+	}
+
+	/**
+	 * Flushes this cache.
+	 * @throws IOException if the file can't be written
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	private void load() throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				throw new IOException(file + " is not a solution cache file");
+			int count = buffer.getInt();
+			synchronized (this) {
+				for (int i = 0; i < count; ++i) {
+					byte[] key = new byte[buffer.getShort()];
+					buffer.get(key);
+					byte[] encoded = new byte[buffer.getShort()];
+					buffer.get(encoded);
+					entries.put(new String(key, StandardCharsets.US_ASCII), encoded);
+				}
+			}
+		} catch (RuntimeException ex) {
+			//BufferUnderflowException, NegativeArraySizeException
+			throw new IOException(file + " is truncated or corrupt", ex);
+		}
+	}
+
+	/**
+	 * Returns the given board's key, storing the index of the transform that
+	 * produces it in transform[0].
+	 */
+	private String key(Puzzle puzzle, int[] transform) {
+		Topology topology = puzzle.topology();
+		String best = null;
+		for (int t = 0; t < (normalize ? TRANSFORMS.length : 1); ++t) {
+			boolean transpose = TRANSFORMS[t][0];
+			int rows = transpose ? topology.cols() : topology.rows(), cols = transpose ? topology.rows() : topology.cols();
+			StringBuilder sb = new StringBuilder(rows * (cols + 1));
+			for (int r = 0; r < rows; ++r) {
+				if (r > 0) sb.append('\n');
+				for (int c = 0; c < cols; ++c) {
+					Node n = untransform(topology, t, r, c);
+					sb.append(n == null ? " " : n.toString());
+				}
+			}
+			String key = sb.toString();
+			if (best == null || key.compareTo(best) < 0) {
+				best = key;
+				transform[0] = t;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the node of the given board at the given position of the board
+	 * as transformed by the given transform.
+	 */
+	private static Node untransform(Topology topology, int transform, int row, int col) {
+		boolean[] t = TRANSFORMS[transform];
+		int r = t[0] ? col : row, c = t[0] ? row : col;
+		return topology.at(t[1] ? topology.rows() - 1 - r : r, t[2] ? topology.cols() - 1 - c : c);
+	}
+
+	/**
+	 * Encodes the given solution as its path count, then each path's length
+	 * and its nodes' positions in the transformed board, one byte each.
+	 */
+	private static byte[] encode(Set<List<Node>> solution, Puzzle puzzle, int transform) {
+		boolean[] t = TRANSFORMS[transform];
+		Topology topology = puzzle.topology();
+		int bytes = 1;
+		for (List<Node> path : solution)
+			bytes += 1 + 2 * path.size();
+		ByteBuffer buffer = ByteBuffer.allocate(bytes);
+		buffer.put((byte)solution.size());
+		for (List<Node> path : solution) {
+			buffer.put((byte)path.size());
+			for (Node n : path) {
+				int r = t[1] ? topology.rows() - 1 - n.row() : n.row();
+				int c = t[2] ? topology.cols() - 1 - n.col() : n.col();
+				buffer.put((byte)(t[0] ? c : r)).put((byte)(t[0] ? r : c));
+			}
+		}
+		return buffer.array();
+	}
+
+	private static Set<List<Node>> decode(byte[] encoded, Puzzle puzzle, int transform) {
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		ImmutableSet.Builder<List<Node>> solution = ImmutableSet.builder();
+		for (int paths = buffer.get(); paths > 0; --paths) {
+			ImmutableList.Builder<Node> path = ImmutableList.builder();
+			for (int length = buffer.get(); length > 0; --length)
+				path.add(untransform(puzzle.topology(), transform, buffer.get(), buffer.get()));
+			solution.add(path.build());
+		}
+		return solution.build();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d boards, %d hits, %d misses", entries.size(), hits, misses);
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import com.google.common.collect.ImmutableMap;
+import com.jeffreybosboom.lyne.rules.InferenceRule;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A report on one solve: the shape of its search tree, the work done by each
+ * inference rule, and the time spent.  Reports are created by Solver for
+ * configs with a metrics listener (see Solver.Config.withMetrics) and passed
+ * to the listener when the solve finishes; searches without a listener don't
+ * measure anything.
+ *
+ * Reports are filled in by a single search thread and are effectively
+ * immutable once passed to the listener.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class SolveMetrics {
+	/**
+	 * Counters for one inference rule.
+	 */
+	public static final class RuleMetrics {
+		long invocations, nanos, narrowings, contradictions;
+		RuleMetrics() {}
+
+		/**
+		 * Returns the number of times the rule was applied, in full or to a
+		 * changed edge.
+		 */
+		public long invocations() {
+			return invocations;
+		}
+
+		/**
+		 * Returns the time spent applying the rule, in nanoseconds.
+		 */
+		public long nanos() {
+			return nanos;
+		}
+
+		/**
+		 * Returns the number of times the rule narrowed an edge's
+		 * possibilities.
+		 */
+		public long narrowings() {
+			return narrowings;
+		}
+
+		/**
+		 * Returns the number of contradictions the rule found.
+		 */
+		public long contradictions() {
+			return contradictions;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d invocations, %.3f ms, %d narrowings, %d contradictions",
+					invocations, nanos / 1e6, narrowings, contradictions);
+		}
+	}
+
+	long nodes, contradictions, fixpoints, propagatedEdges, solutionPathsCalls, solutionPathsNanos, elapsedNanos;
+	int maxDepth;
+	private final Map<String, RuleMetrics> rules = new LinkedHashMap<>();
+	SolveMetrics() {}
+
+	/**
+	 * Returns the counters for the given rule, creating them if needed.
+	 * Rules are identified by their class, so two instances of a rule share
+	 * counters.
+	 */
+	RuleMetrics rule(InferenceRule rule) {
+		return rules.computeIfAbsent(rule.getClass().getSimpleName(), k -> new RuleMetrics());
+	}
+
+	/**
+	 * Records a visit to a search node at the given depth (decisions made to
+	 * reach it).
+	 */
+	void node(int depth) {
+		++nodes;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	/**
+	 * Returns the number of search nodes (calls choosing a branch edge or
+	 * checking a solution) visited.
+	 */
+	public long nodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the most decisions on the path to any search node.
+	 */
+	public int maxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Returns the number of contradictions found by propagation, including
+	 * the initial inference.
+	 */
+	public long contradictions() {
+		return contradictions;
+	}
+
+	/**
+	 * Returns the number of propagations run to a fixpoint (or contradiction).
+	 */
+	public long fixpoints() {
+		return fixpoints;
+	}
+
+	/**
+	 * Returns the number of changed edges dequeued by those propagations, each
+	 * an iteration of the fixpoint loop.
+	 */
+	public long propagatedEdges() {
+		return propagatedEdges;
+	}
+
+	/**
+	 * Returns the number of solved puzzles whose paths were constructed and
+	 * checked.
+	 */
+	public long solutionPathsCalls() {
+		return solutionPathsCalls;
+	}
+
+	/**
+	 * Returns the time spent constructing and checking paths, in nanoseconds.
+	 */
+	public long solutionPathsNanos() {
+		return solutionPathsNanos;
+	}
+
+	/**
+	 * Returns the duration of the solve, in nanoseconds.
+	 */
+	public long elapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Returns the counters for each rule, by rule class name, in the order
+	 * Solver applies them.
+	 */
+	public ImmutableMap<String, RuleMetrics> rules() {
+		return ImmutableMap.copyOf(rules);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(String.format(
+				"%.3f ms: %d nodes (max depth %d), %d contradictions, %d fixpoints (%d edges), %d solution checks (%.3f ms)",
+				elapsedNanos / 1e6, nodes, maxDepth, contradictions, fixpoints, propagatedEdges,
+				solutionPathsCalls, solutionPathsNanos / 1e6));
+		for (Map.Entry<String, RuleMetrics> e : rules.entrySet())
+			sb.append(String.format("%n  %s: %s", e.getKey(), e.getValue()));
+		return sb.toString();
+	}
+}
@@ -19,18 +19,21 @@
 package com.jeffreybosboom.lyne;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multiset;
 import com.jeffreybosboom.lyne.rules.*;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
-import java.util.function.Function;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * Solves puzzles.  Solver performs local inference about possibilities for each
@@ -42,110 +45,476 @@ import java.util.function.Function;
  */
 public final class Solver {
 	private Solver() {}
-	private static final Function<Puzzle, Puzzle> ONE_TIME_INFERENCE = Function.<Puzzle>identity()
-			.andThen(new ColorColorRule())
-			.andThen(new ColorOctagonRule())
-			.andThen(new TerminalTerminalRule())
-			;
-	private static final Function<Puzzle, Puzzle> MULTI_TIME_INFERENCE = fixpoint(Function.<Puzzle>identity()
-			.andThen(fixpoint(new DesiredEdgesRule()))
-			.andThen(fixpoint(new CrossingEdgesRule()))
-			.andThen(fixpoint(new OctagonOneEdgeOfColorRule()))
+	/**
+	 * Rules run by the Propagator, in full at the start of each solve and then
+	 * after every change.  The fused rule makes the local deductions (see
+	 * FusedInferenceRule for the separate rules it replaces).
+	 */
+	private static final ImmutableList<IncrementalInferenceRule> RULES = ImmutableList.of(
+			new FusedInferenceRule(),
+			new SubtourRule(),
+			new PathConnectivityRule()
 	);
 
+	/**
+	 * How the backtracking search keeps the puzzle state of each search node.
+	 */
+	public enum Mode {
+		/**
+		 * Each search node has its own immutable Puzzle, so backtracking just
+		 * discards it.
+		 */
+		PERSISTENT,
+		/**
+		 * One trailed Puzzle is narrowed in place; backtracking rolls it back
+		 * to the checkpoint taken before branching.
+		 */
+		TRAIL,
+		/**
+		 * As TRAIL, but failures are analyzed to find the decisions they
+		 * depended on, allowing the search to backjump over irrelevant
+		 * decisions and to learn nogoods that prune other subtrees.
+		 */
+		LEARNING,
+	}
+
+	/**
+	 * How to search: the mode, branching strategy, rule scheduling, and
+	 * optional transposition table, statistics and metrics listener.
+	 * Configs are immutable; the with methods return modified copies.
+	 */
+	public static final class Config {
+		/**
+		 * PERSISTENT mode with the default branching strategy and static rule
+		 * order, and no table, statistics or metrics.
+		 */
+		public static final Config DEFAULT = new Config(Mode.PERSISTENT, BranchingStrategy.DEFAULT, false, null, null, null);
+		private final Mode mode;
+		private final BranchingStrategy branching;
+		private final boolean adaptiveRules;
+		private final TranspositionTable table;
+		private final SearchStatistics statistics;
+		private final Consumer<? super SolveMetrics> metrics;
+		private Config(Mode mode, BranchingStrategy branching, boolean adaptiveRules, TranspositionTable table, SearchStatistics statistics, Consumer<? super SolveMetrics> metrics) {
+			this.mode = checkNotNull(mode);
+			this.branching = checkNotNull(branching);
+			this.adaptiveRules = adaptiveRules;
+			this.table = table;
+			this.statistics = statistics;
+			this.metrics = metrics;
+		}
+
+		public Config withMode(Mode mode) {
+			return new Config(mode, branching, adaptiveRules, table, statistics, metrics);
+		}
+
+		public Config withBranching(BranchingStrategy branching) {
+			return new Config(mode, branching, adaptiveRules, table, statistics, metrics);
+		}
+
+		/**
+		 * Returns a config whose propagation orders rules by how much they
+		 * have recently narrowed per unit of time, deferring unproductive
+		 * rules until the others reach a fixpoint (see RuleScheduler), or
+		 * applies them in a fixed order.  Both reach the same fixpoint.
+		 * @param adaptiveRules true to schedule rules adaptively
+		 */
+		public Config withAdaptiveRules(boolean adaptiveRules) {
+			return new Config(mode, branching, adaptiveRules, table, statistics, metrics);
+		}
+
+		/**
+		 * Returns a config whose searches skip states the given table knows
+		 * have no solution and record those found to have none.
+		 * @param table a table for the puzzle to be solved, or null
+		 */
+		public Config withTable(TranspositionTable table) {
+			return new Config(mode, branching, adaptiveRules, table, statistics, metrics);
+		}
+
+		/**
+		 * Returns a config whose searches add to the given statistics.  Only
+		 * LEARNING mode records statistics.
+		 * @param statistics the statistics to add to, or null
+		 */
+		public Config withStatistics(SearchStatistics statistics) {
+			return new Config(mode, branching, adaptiveRules, table, statistics, metrics);
+		}
+
+		/**
+		 * Returns a config whose searches measure themselves and pass a report
+		 * of each solve to the given listener (such as a SolverMetrics) when it
+		 * finishes.  If the config is used by several threads at once, the
+		 * listener is too.
+		 * @param metrics the listener, or null to measure nothing
+		 */
+		public Config withMetrics(Consumer<? super SolveMetrics> metrics) {
+			return new Config(mode, branching, adaptiveRules, table, statistics, metrics);
+		}
+
+		public Mode mode() {
+			return mode;
+		}
+
+		public BranchingStrategy branching() {
+			return branching;
+		}
+
+		@Override
+		public String toString() {
+			return mode + "/" + branching + (adaptiveRules ? "/adaptive" : "");
+		}
+	}
+
 	/**
 	 * Solves the given puzzle using a backtracking search.
 	 * @param p the puzzle to search
 	 * @return solution paths (one per color), or null
 	 */
 	public static Set<List<Node>> solve(Puzzle p) {
-		return solve_recurse(ONE_TIME_INFERENCE.apply(p));
-	}
-
-	private static Set<List<Node>> solve_recurse(Puzzle p) {
-		p = MULTI_TIME_INFERENCE.apply(p);
-		final Puzzle p_ = p;
-		Optional<Pair<Node, Node>> maybe = p.edges()
-				.filter(a -> p_.possibilities(a.first, a.second).size() > 1)
-				.sorted((a, b) -> Integer.compare(p_.possibilities(a.first, a.second).size(), p_.possibilities(b.first, b.second).size()))
-				.findFirst();
-		if (!maybe.isPresent())
-			return solutionPaths(p);
-
-		Pair<Node, Node> edge = maybe.get();
-		ImmutableSet<Node.Kind> possibilities = p.possibilities(edge.first, edge.second);
-		for (Node.Kind k : possibilities)
+		return solve(p, Config.DEFAULT);
+	}
+
+	/**
+	 * Solves the given puzzle using a backtracking search in the given mode.
+	 * PERSISTENT and TRAIL find the same solution.
+	 * @param p the puzzle to search
+	 * @param mode how to keep puzzle state during the search
+	 * @return solution paths (one per color), or null
+	 */
+	public static Set<List<Node>> solve(Puzzle p, Mode mode) {
+		return solve(p, Config.DEFAULT.withMode(mode));
+	}
+
+	/**
+	 * Solves the given puzzle using a backtracking search configured by the
+	 * given config.  Given the same branching strategy, PERSISTENT and TRAIL
+	 * find the same solution.
+	 * @param p the puzzle to search
+	 * @param config how to search
+	 * @return solution paths (one per color), or null
+	 */
+	public static Set<List<Node>> solve(Puzzle p, Config config) {
+		return solve(p, () -> false, config);
+	}
+
+	/**
+	 * Returns a PuzzleSolver that solves puzzles using a backtracking search
+	 * configured by the given config.  The config's table, if any, limits the
+	 * solver to puzzles with the table's board.
+	 * @param config how to search
+	 * @return a solver using the given config
+	 */
+	public static PuzzleSolver engine(Config config) {
+		checkNotNull(config);
+		return (p, cancelled) -> solve(p, cancelled, config);
+	}
+
+	/**
+	 * Solves the given puzzle using a trailed backtracking search, giving up
+	 * when the given supplier returns true.
+	 * @param p the puzzle to search
+	 * @param cancelled polled at each search node and during propagation;
+	 * returns true to give up
+	 * @return solution paths (one per color), or null if there are none or the
+	 * search was cancelled
+	 */
+	static Set<List<Node>> solve(Puzzle p, BooleanSupplier cancelled) {
+		return solve(p, cancelled, Config.DEFAULT.withMode(Mode.TRAIL));
+	}
+
+	private static Set<List<Node>> solve(Puzzle p, BooleanSupplier cancelled, Config config) {
+		TranspositionTable table = config.table;
+		checkArgument(table == null || table.isFor(p), "table is for another puzzle");
+		Propagator propagator = new Propagator(p, RULES);
+		SolveMetrics metrics = null;
+		long start = 0;
+		if (config.metrics != null) {
+			metrics = new SolveMetrics();
+			propagator.measure(metrics);
+			start = System.nanoTime();
+		}
+		if (config.adaptiveRules)
+			propagator.schedule();
+		propagator.cancelOn(cancelled);
+		try {
+			switch (config.mode) {
+				case PERSISTENT:
+					Puzzle q = propagator.propagateAll(p);
+					return solve_recurse(q, propagator, cancelled, table, config.branching.newBrancher(q), 0);
+				case TRAIL:
+					Puzzle r = propagator.propagateAll(p.trailed());
+					return solve_recurse_trailed(r, propagator, cancelled, table, config.branching.newBrancher(r), 0);
+				case LEARNING:
+					Puzzle t = propagator.propagateAll(p.trailed());
+					return new LearningSearch(t, propagator, cancelled, table, config.branching.newBrancher(t),
+							config.statistics != null ? config.statistics : new SearchStatistics()).search();
+				default:
+					throw new AssertionError(config.mode);
+			}
+		} catch (ContradictionException | CancellationException e) {
+			//a cancelled search unwinds without recording refutations
+			return null;
+		} finally {
+			if (metrics != null) {
+				metrics.elapsedNanos = System.nanoTime() - start;
+				config.metrics.accept(metrics);
+			}
+			if (propagator.scheduler() != null)
+				propagator.scheduler().finished();
+		}
+	}
+
+	/**
+	 * Applies all inference rules to the given puzzle until no more inferences
+	 * can be made, without searching.  Other backends use this to start from
+	 * the possibilities the rules leave.
+	 * @param p the puzzle
+	 * @return the narrowed puzzle
+	 * @throws ContradictionException if the puzzle has no solution
+	 */
+	static Puzzle infer(Puzzle p) {
+		return new Propagator(p, RULES).propagateAll(p);
+	}
+
+	/**
+	 * The default depth cutoff for solveParallel(Puzzle).  Most edges have two
+	 * possibilities, so this creates a few hundred subtasks, enough to keep
+	 * a many-core machine busy despite uneven subtree sizes.
+	 */
+	private static final int DEFAULT_DEPTH_CUTOFF = 8;
+
+	/**
+	 * Solves the given puzzle using a parallel backtracking search in the
+	 * common fork/join pool, reporting whichever solution is found first.
+	 * @param p the puzzle to search
+	 * @return solution paths (one per color), or null
+	 */
+	public static Set<List<Node>> solveParallel(Puzzle p) {
+		return solveParallel(p, ForkJoinPool.commonPool(), DEFAULT_DEPTH_CUTOFF, false);
+	}
+
+	/**
+	 * Solves the given puzzle using a parallel backtracking search.  Each
+	 * possibility of the branch edge is searched in its own subtask, down to
+	 * the given depth; below that, subtasks search sequentially.  Once a
+	 * solution is found, subtasks whose results cannot be reported are
+	 * cancelled.
+	 * @param p the puzzle to search
+	 * @param pool the pool to search in
+	 * @param depthCutoff the number of levels of the search tree to split into
+	 * subtasks
+	 * @param deterministic if true, report the solution solve() would report;
+	 * if false, report whichever solution is found first
+	 * @return solution paths (one per color), or null
+	 */
+	public static Set<List<Node>> solveParallel(Puzzle p, ForkJoinPool pool, int depthCutoff, boolean deterministic) {
+		checkArgument(depthCutoff >= 0, "negative depth cutoff: %s", depthCutoff);
+		Propagator propagator = new Propagator(p, RULES);
+		Puzzle q;
+		try {
+			q = propagator.propagateAll(p);
+		} catch (ContradictionException e) {
+			return null;
+		}
+		return pool.invoke(new ParallelSearch(q, propagator, depthCutoff, deterministic));
+	}
+
+	/**
+	 * Searches for a solution to the given puzzle, on which propagation has
+	 * already reached a fixpoint, using the given transposition table if it is
+	 * non-null.  The search gives up, returning null, when cancelled returns
+	 * true.  depth is the number of decisions made to reach p.
+	 */
+	private static Set<List<Node>> solve_recurse(Puzzle p, Propagator propagator, BooleanSupplier cancelled, TranspositionTable table, Brancher brancher, int depth) {
+		if (cancelled.getAsBoolean()) return null;
+		SolveMetrics metrics = propagator.metrics();
+		if (metrics != null)
+			metrics.node(depth);
+		if (table != null && table.isRefuted(p))
+			return null;
+		int edge = brancher.chooseEdge(p);
+		if (edge == -1) {
+			Set<List<Node>> paths = solutionPaths(p, metrics);
+			if (paths == null && table != null)
+				table.refuted(p);
+			return paths;
+		}
+
+		Pair<Node, Node> nodes = p.edge(edge);
+		for (Node.Kind k : brancher.values(p, edge))
+			try {
+				Puzzle q = propagator.propagate(p.set(nodes.first, nodes.second, k), nodes);
+				Set<List<Node>> recurse = solve_recurse(q, propagator, cancelled, table, brancher, depth + 1);
+				if (recurse != null) return recurse;
+			} catch (ContradictionException e) {
+				brancher.conflict(propagator.conflict());
+			}
+		//a cancelled search hasn't refuted anything
+		if (table != null && !cancelled.getAsBoolean())
+			table.refuted(p);
+		return null;
+	}
+
+	/**
+	 * solve_recurse for trailed puzzles: instead of each branch getting its own
+	 * Puzzle, p is narrowed in place and rolled back after each branch.  The
+	 * search gives up, returning null, when cancelled returns true.
+	 */
+	static Set<List<Node>> solve_recurse_trailed(Puzzle p, Propagator propagator, BooleanSupplier cancelled) {
+		return solve_recurse_trailed(p, propagator, cancelled, null, BranchingStrategy.DEFAULT.newBrancher(p), 0);
+	}
+
+	private static Set<List<Node>> solve_recurse_trailed(Puzzle p, Propagator propagator, BooleanSupplier cancelled, TranspositionTable table, Brancher brancher, int depth) {
+		if (cancelled.getAsBoolean()) return null;
+		SolveMetrics metrics = propagator.metrics();
+		if (metrics != null)
+			metrics.node(depth);
+		if (table != null && table.isRefuted(p))
+			return null;
+		int edge = brancher.chooseEdge(p);
+		if (edge == -1) {
+			Set<List<Node>> paths = solutionPaths(p, metrics);
+			if (paths == null && table != null)
+				table.refuted(p);
+			return paths;
+		}
+
+		Pair<Node, Node> nodes = p.edge(edge);
+		//the values array is shared and immutable, so unaffected by narrowing p
+		for (Node.Kind k : brancher.values(p, edge)) {
+			int checkpoint = p.checkpoint();
 			try {
-				Set<List<Node>> recurse = solve_recurse(p.set(edge.first, edge.second, k));
+				propagator.propagate(p.set(nodes.first, nodes.second, k), checkpoint);
+				Set<List<Node>> recurse = solve_recurse_trailed(p, propagator, cancelled, table, brancher, depth + 1);
 				if (recurse != null) return recurse;
-			} catch (ContradictionException e) {}
+			} catch (ContradictionException e) {
+				brancher.conflict(propagator.conflict());
+			} finally {
+				p.rollback(checkpoint);
+			}
+		}
+		//a cancelled search hasn't refuted anything
+		if (table != null && !cancelled.getAsBoolean())
+			table.refuted(p);
 		return null;
 	}
 
+	/**
+	 * As solutionPaths(Puzzle), measuring into the given report if it is
+	 * non-null.
+	 */
+	static Set<List<Node>> solutionPaths(Puzzle puzzle, SolveMetrics metrics) {
+		if (metrics == null)
+			return solutionPaths(puzzle);
+		long start = System.nanoTime();
+		try {
+			return solutionPaths(puzzle);
+		} finally {
+			++metrics.solutionPathsCalls;
+			metrics.solutionPathsNanos += System.nanoTime() - start;
+		}
+	}
+
 	/**
 	 * Returns the paths through the given solved puzzle, one per color, or null
 	 * if the solution paths are unsatisfying.
 	 * @param puzzle a solved puzzle
 	 * @return the solution paths, one per color, or null
 	 */
-	private static Set<List<Node>> solutionPaths(Puzzle puzzle) {
-		puzzle.getClass();
-		checkArgument(puzzle.edges().allMatch(a -> puzzle.possibilities(a.first, a.second).size() == 1));
+	static Set<List<Node>> solutionPaths(Puzzle puzzle) {
+		checkArgument(puzzle.undeterminedEdgeCount() == 0);
 		ImmutableSet.Builder<List<Node>> pathsBuilder = ImmutableSet.builder();
 		for (Iterator<Pair<Node, Node>> it = puzzle.terminals().iterator(); it.hasNext();) {
-			Pair<Node, Node> pair = it.next();
-			List<Node> path = new ArrayList<>();
-			path.add(pair.first);
-			path = findPath(puzzle, path, pair.second, new HashSet<>());
+			List<Node> path = findPath(puzzle, it.next());
 			if (path == null) return null;
 			pathsBuilder.add(path);
 		}
 		ImmutableSet<List<Node>> paths = pathsBuilder.build();
 		Multiset<Node> counts = HashMultiset.create();
 		paths.stream().forEachOrdered(counts::addAll);
-		//ensure each node appears enough times over all the paths
-		//TODO: we check colored node appearances in findPath, so this could be
-		//just octagons?
-		if (!puzzle.nodes().allMatch(n -> counts.count(n) == (n.desiredEdges()+1)/2))
+		//findPath checks colored nodes appear once, so only octagons remain
+		if (!puzzle.nodes()
+				.filter(n -> n.kind() == Node.Kind.OCTAGON)
+				.allMatch(n -> counts.count(n) == n.desiredEdges()/2))
 			return null;
 		return paths;
 	}
 
-	private static List<Node> findPath(Puzzle puzzle, List<Node> path, Node dest, Set<Pair<Node, Node>> usedEdges) {
-		Node cur = path.get(path.size()-1);
-		if (cur.equals(dest) && puzzle.nodes().filter(n -> n.kind() == dest.kind()).allMatch(n -> Collections.frequency(path, n) == 1))
-			return path;
-
-		Iterator<Node> maybeNext = puzzle.neighbors(cur)
-				.filter(n -> puzzle.possibilities(cur, n).contains(dest.kind()))
-				.filter(n -> !usedEdges.contains(Pair.sorted(cur, n)))
-				//don't return to a terminal we've already visited
-				.filter(n -> !(n.isTerminal() && path.contains(n)))
-				//ensure we pick the other terminal last
-				.sorted((n1, n2) -> n1 == dest ? 1 : n2 == dest ? -1 : 0)
-				.iterator();
-		while (maybeNext.hasNext()) {
-			Node next = maybeNext.next();
-			path.add(next);
-			Pair<Node, Node> edge = Pair.sorted(cur, next);
-			usedEdges.add(edge);
-			List<Node> recurse = findPath(puzzle, path, dest, usedEdges);
-			if (recurse != null)
-				return recurse;
-			path.remove(path.size()-1);
-			usedEdges.remove(edge);
+	/**
+	 * Returns a color whose path could not be found in the given solved puzzle,
+	 * or null if all paths can be found (but solutionPaths failed because an
+	 * octagon is visited too few times).  Used to explain solutionPaths'
+	 * failures: a color's path depends only on which edges have that color.
+	 * @param puzzle a solved puzzle for which solutionPaths returns null
+	 * @return a color without a path, or null
+	 */
+	static Node.Kind unsatisfiedColor(Puzzle puzzle) {
+		for (Iterator<Pair<Node, Node>> it = puzzle.terminals().iterator(); it.hasNext();) {
+			Pair<Node, Node> pair = it.next();
+			if (findPath(puzzle, pair) == null)
+				return pair.first.kind();
 		}
 		return null;
 	}
 
-	private static <T, R extends T> Function<T, R> fixpoint(Function<T, R> f) {
-		return (t) -> {
-			T current = t;
-			while (true) {
-				R next = f.apply(current);
-				if (current.equals(next)) return next;
-				current = next;
+	/**
+	 * Returns the path between the given terminals using exactly the edges of
+	 * their color, or null if there isn't one.  Such a path exists if and only
+	 * if the terminals have one edge of their color, the other nodes of their
+	 * color have two, octagons have an even number, and the edges are
+	 * connected; it is then an Euler trail, found by Hierholzer's algorithm in
+	 * time linear in the number of edges.  (Crossing edges are excluded by
+	 * CrossingEdgesRule before we get here, and a path may leave an octagon
+	 * by any edge, so any Euler trail will do.)
+	 * @param puzzle a solved puzzle
+	 * @param terminals the terminals of one color
+	 * @return the path from terminals.first to terminals.second, or null
+	 */
+	private static List<Node> findPath(Puzzle puzzle, Pair<Node, Node> terminals) {
+		Topology topology = puzzle.topology();
+		Node.Kind color = terminals.first.kind();
+		int mask = Puzzle.mask(color);
+		int edgeCount = 0;
+		for (int n = 0; n < topology.nodeCount(); ++n) {
+			Node node = topology.node(n);
+			int degree = 0;
+			for (int e : topology.incidentEdges(n))
+				if (puzzle.edgeSet(e) == mask)
+					++degree;
+			if (node.kind() == color ? degree != node.desiredEdges() :
+					node.kind() == Node.Kind.OCTAGON ? degree % 2 != 0 :
+					degree != 0)
+				return null;
+			edgeCount += degree;
+		}
+		edgeCount /= 2;
+
+		boolean[] used = new boolean[topology.edgeCount()];
+		//the position in each node's incidentEdges to resume scanning from
+		int[] scan = new int[topology.nodeCount()];
+		int[] stack = new int[edgeCount + 1];
+		int stackSize = 0;
+		stack[stackSize++] = topology.nodeIndex(terminals.first);
+		List<Node> path = new ArrayList<>(edgeCount + 1);
+		while (stackSize > 0) {
+			int cur = stack[stackSize - 1];
+			int[] edges = topology.incidentEdges(cur);
+			while (scan[cur] < edges.length && (used[edges[scan[cur]]] || puzzle.edgeSet(edges[scan[cur]]) != mask))
+				++scan[cur];
+			if (scan[cur] == edges.length) {
+				path.add(topology.node(cur));
+				--stackSize;
+				continue;
 			}
-		};
+			used[edges[scan[cur]]] = true;
+			stack[stackSize++] = topology.neighbors(cur)[scan[cur]];
+		}
+		//edges not reachable from the first terminal aren't on the path
+		if (path.size() != edgeCount + 1)
+			return null;
+		Collections.reverse(path);
+		assert path.get(path.size() - 1) == terminals.second : path;
+		return path;
 	}
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import com.google.common.collect.ImmutableMap;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Totals of solve reports, exposed as a JMX MXBean.  Pass an instance to
+ * Solver.Config.withMetrics to add each solve's report to it, and register
+ * it to browse the totals in a JMX console:
+ * <pre>
+ * SolverMetrics metrics = new SolverMetrics();
+ * metrics.register();
+ * Solver.solve(puzzle, config.withMetrics(metrics));
+ * </pre>
+ * SolverMetrics are thread-safe, so one instance may total concurrent solves.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class SolverMetrics implements SolverMetricsMXBean, Consumer<SolveMetrics> {
+	/**
+	 * The name register() registers under.
+	 */
+	public static final String DEFAULT_NAME = "com.jeffreybosboom.lyne:type=SolverMetrics";
+	//guarded by this
+	private long solves, nodes, contradictions, fixpoints, propagatedEdges, solutionPathsCalls, solutionPathsNanos, elapsedNanos;
+	private int maxDepth;
+	private final Map<String, SolveMetrics.RuleMetrics> rules = new LinkedHashMap<>();
+
+	/**
+	 * Registers this with the platform MBean server under DEFAULT_NAME.
+	 * @throws JMException if the registration fails (for example, if another
+	 * instance is already registered)
+	 */
+	public void register() throws JMException {
+		register(new ObjectName(DEFAULT_NAME));
+	}
+
+	/**
+	 * Registers this with the platform MBean server under the given name.
+	 * @throws JMException if the registration fails
+	 */
+	public void register(ObjectName name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+	}
+
+	/**
+	 * Adds the given solve report to the totals.
+	 */
+	@Override
+	public synchronized void accept(SolveMetrics m) {
+		++solves;
+		nodes += m.nodes;
+		maxDepth = Math.max(maxDepth, m.maxDepth);
+		contradictions += m.contradictions;
+		fixpoints += m.fixpoints;
+		propagatedEdges += m.propagatedEdges;
+		solutionPathsCalls += m.solutionPathsCalls;
+		solutionPathsNanos += m.solutionPathsNanos;
+		elapsedNanos += m.elapsedNanos;
+		for (Map.Entry<String, SolveMetrics.RuleMetrics> e : m.rules().entrySet()) {
+			SolveMetrics.RuleMetrics total = rules.computeIfAbsent(e.getKey(), k -> new SolveMetrics.RuleMetrics());
+			total.invocations += e.getValue().invocations;
+			total.nanos += e.getValue().nanos;
+			total.narrowings += e.getValue().narrowings;
+			total.contradictions += e.getValue().contradictions;
+		}
+	}
+
+	@Override
+	public synchronized long getSolves() {
+		return solves;
+	}
+
+	@Override
+	public synchronized long getNodes() {
+		return nodes;
+	}
+
+	@Override
+	public synchronized int getMaxDepth() {
+		return maxDepth;
+	}
+
+	@Override
+	public synchronized long getContradictions() {
+		return contradictions;
+	}
+
+	@Override
+	public synchronized long getFixpoints() {
+		return fixpoints;
+	}
+
+	@Override
+	public synchronized long getPropagatedEdges() {
+		return propagatedEdges;
+	}
+
+	@Override
+	public synchronized long getSolutionPathsCalls() {
+		return solutionPathsCalls;
+	}
+
+	@Override
+	public synchronized long getSolutionPathsNanos() {
+		return solutionPathsNanos;
+	}
+
+	@Override
+	public synchronized long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	@Override
+	public Map<String, Long> getRuleInvocations() {
+		return ruleTotals(SolveMetrics.RuleMetrics::invocations);
+	}
+
+	@Override
+	public Map<String, Long> getRuleNanos() {
+		return ruleTotals(SolveMetrics.RuleMetrics::nanos);
+	}
+
+	@Override
+	public Map<String, Long> getRuleNarrowings() {
+		return ruleTotals(SolveMetrics.RuleMetrics::narrowings);
+	}
+
+	@Override
+	public Map<String, Long> getRuleContradictions() {
+		return ruleTotals(SolveMetrics.RuleMetrics::contradictions);
+	}
+
+	private synchronized Map<String, Long> ruleTotals(ToLongFunction<SolveMetrics.RuleMetrics> counter) {
+		ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+		for (Map.Entry<String, SolveMetrics.RuleMetrics> e : rules.entrySet())
+			builder.put(e.getKey(), counter.applyAsLong(e.getValue()));
+		return builder.build();
+	}
+
+	@Override
+	public synchronized void reset() {
+		solves = nodes = contradictions = fixpoints = propagatedEdges = solutionPathsCalls = solutionPathsNanos = elapsedNanos = 0;
+		maxDepth = 0;
+		rules.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder(String.format(
+				"%d solves, %.3f ms: %d nodes (max depth %d), %d contradictions, %d fixpoints (%d edges), %d solution checks (%.3f ms)",
+				solves, elapsedNanos / 1e6, nodes, maxDepth, contradictions, fixpoints, propagatedEdges,
+				solutionPathsCalls, solutionPathsNanos / 1e6));
+		for (Map.Entry<String, SolveMetrics.RuleMetrics> e : rules.entrySet())
+			sb.append(String.format("%n  %s: %s", e.getKey(), e.getValue()));
+		return sb.toString();
+	}
+}
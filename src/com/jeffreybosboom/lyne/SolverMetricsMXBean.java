@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import java.util.Map;
+
+/**
+ * The JMX management interface of SolverMetrics.  Totals are over all solve
+ * reports recorded since creation or the last reset; times are in
+ * nanoseconds; per-rule maps are keyed by rule class name.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public interface SolverMetricsMXBean {
+	public long getSolves();
+	public long getNodes();
+	public int getMaxDepth();
+	public long getContradictions();
+	public long getFixpoints();
+	public long getPropagatedEdges();
+	public long getSolutionPathsCalls();
+	public long getSolutionPathsNanos();
+	public long getElapsedNanos();
+	public Map<String, Long> getRuleInvocations();
+	public Map<String, Long> getRuleNanos();
+	public Map<String, Long> getRuleNarrowings();
+	public Map<String, Long> getRuleContradictions();
+	public void reset();
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The structure of a puzzle's board: its nodes and edges and how they relate,
+ * independent of the edges' possibilities.  A Topology is built once per
+ * board and shared by all Puzzles for that board, so that inference rules can
+ * loop over int-indexed arrays instead of streaming and regrouping nodes.
+ *
+ * Nodes are indexed in row-major order and edges in the order of
+ * Puzzle.edges().  Arrays returned by this class are shared and must not be
+ * modified.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class Topology {
+	private static final int[][] NEIGHBORHOOD = {
+		{-1, -1}, {-1, 0}, {-1, 1},
+		{0, -1}, {0, 1},
+		{1, -1}, {1, 0}, {1, 1},
+	};
+	private final Node[][] grid;
+	/**
+	 * The index of the node at each position, or -1 if there is none.
+	 */
+	private final int[][] nodeIndices;
+	private final ImmutableList<Node> nodes;
+	/**
+	 * Each node's neighbors (as node indices) and the edges to them, in
+	 * parallel arrays, indexed by node index.
+	 */
+	private final int[][] neighbors, incidentEdges;
+	private final ImmutableList<Pair<Node, Node>> edges;
+	/**
+	 * The edge from each node in each direction (see direction()), or -1,
+	 * indexed by node index.  Looking up an edge from its nodes' positions
+	 * neither allocates nor hashes.
+	 */
+	private final int[][] edgeIds;
+	/**
+	 * The node indices of each edge's endpoints, in canonical order.
+	 */
+	private final int[] edgeFirst, edgeSecond;
+	/**
+	 * The edge crossing each edge, or -1.
+	 */
+	private final int[] crossingEdges;
+	/**
+	 * The indices of the nodes of each kind, indexed by Kind ordinal.
+	 */
+	private final int[][] nodesOfKind;
+	private final ImmutableList<Pair<Node, Node>> terminals;
+	Topology(Node[][] grid) {
+		this.grid = grid;
+		this.nodeIndices = new int[grid.length][grid[0].length];
+		ImmutableList.Builder<Node> nodesBuilder = ImmutableList.builder();
+		int nodeCount = 0;
+		for (int r = 0; r < grid.length; ++r)
+			for (int c = 0; c < grid[r].length; ++c)
+				if (grid[r][c] != null) {
+					nodeIndices[r][c] = nodeCount++;
+					nodesBuilder.add(grid[r][c]);
+				} else
+					nodeIndices[r][c] = -1;
+		this.nodes = nodesBuilder.build();
+
+		this.neighbors = new int[nodeCount][];
+		for (int i = 0; i < nodeCount; ++i) {
+			Node n = nodes.get(i);
+			int[] buffer = new int[NEIGHBORHOOD.length];
+			int count = 0;
+			for (int[] d : NEIGHBORHOOD) {
+				int r = n.row() + d[0], c = n.col() + d[1];
+				if (0 <= r && r < grid.length && 0 <= c && c < grid[0].length && grid[r][c] != null)
+					buffer[count++] = nodeIndices[r][c];
+			}
+			neighbors[i] = Arrays.copyOf(buffer, count);
+		}
+
+		//each edge once, from its first node in canonical order
+		List<Pair<Node, Node>> edgeList = new ArrayList<>();
+		this.edgeIds = new int[nodeCount][NEIGHBORHOOD.length + 1];
+		for (int[] ids : edgeIds)
+			Arrays.fill(ids, -1);
+		for (int i = 0; i < nodeCount; ++i)
+			for (int j : neighbors[i])
+				if (i < j) {
+					Node a = nodes.get(i), b = nodes.get(j);
+					edgeIds[i][direction(a, b)] = edgeIds[j][direction(b, a)] = edgeList.size();
+					edgeList.add(new Pair<>(a, b));
+				}
+		this.edges = ImmutableList.copyOf(edgeList);
+		this.edgeFirst = new int[edges.size()];
+		this.edgeSecond = new int[edges.size()];
+		for (int e = 0; e < edges.size(); ++e) {
+			edgeFirst[e] = nodeIndex(edges.get(e).first);
+			edgeSecond[e] = nodeIndex(edges.get(e).second);
+		}
+
+		this.incidentEdges = new int[nodeCount][];
+		for (int i = 0; i < nodeCount; ++i) {
+			incidentEdges[i] = new int[neighbors[i].length];
+			for (int k = 0; k < neighbors[i].length; ++k)
+				incidentEdges[i][k] = edgeIndex(nodes.get(i), nodes.get(neighbors[i][k]));
+		}
+
+		this.crossingEdges = new int[edges.size()];
+		for (int e = 0; e < edges.size(); ++e) {
+			Node a = edges.get(e).first, b = edges.get(e).second;
+			crossingEdges[e] = -1;
+			if (a.row() == b.row() || a.col() == b.col())
+				continue; //not diagonal
+			//canonical order puts b in the row below a
+			Node ac = grid[a.row()+1][a.col()], bc = grid[b.row()-1][b.col()];
+			if (ac != null && bc != null)
+				crossingEdges[e] = edgeIndex(ac, bc);
+		}
+
+		this.nodesOfKind = new int[Node.Kind.values().length][];
+		for (Node.Kind k : Node.Kind.values())
+			nodesOfKind[k.ordinal()] = IntStream.range(0, nodeCount)
+					.filter(i -> nodes.get(i).kind() == k)
+					.toArray();
+		ImmutableList.Builder<Pair<Node, Node>> terminalsBuilder = ImmutableList.builder();
+		for (Node.Kind k : Node.Kind.values()) {
+			if (!k.isColored()) continue;
+			int[] terminalIndices = Arrays.stream(nodesOfKind[k.ordinal()])
+					.filter(i -> nodes.get(i).isTerminal())
+					.toArray();
+			if (terminalIndices.length == 0) continue;
+			//a malformed board would otherwise just look unsolvable
+			checkArgument(terminalIndices.length == 2, "%s has %s terminals", k, terminalIndices.length);
+			terminalsBuilder.add(new Pair<>(nodes.get(terminalIndices[0]), nodes.get(terminalIndices[1])));
+		}
+		this.terminals = terminalsBuilder.build();
+	}
+
+	public int rows() {
+		return grid.length;
+	}
+
+	public int cols() {
+		return grid[0].length;
+	}
+
+	/**
+	 * Returns the node at the given position, or null if there is none.
+	 */
+	public Node at(int row, int col) {
+		return grid[row][col];
+	}
+
+	public int nodeCount() {
+		return nodes.size();
+	}
+
+	/**
+	 * Returns the nodes in index (row-major) order.
+	 */
+	public ImmutableList<Node> nodes() {
+		return nodes;
+	}
+
+	public Node node(int index) {
+		return nodes.get(index);
+	}
+
+	public int nodeIndex(Node n) {
+		int index = nodeIndices[n.row()][n.col()];
+		assert index != -1 && nodes.get(index) == n : "not a node: "+n;
+		return index;
+	}
+
+	/**
+	 * Returns the indices of the given node's neighbors.
+	 */
+	public int[] neighbors(int node) {
+		return neighbors[node];
+	}
+
+	/**
+	 * Returns the indices of the edges to the given node's neighbors, in the
+	 * same order as neighbors(node).
+	 */
+	public int[] incidentEdges(int node) {
+		return incidentEdges[node];
+	}
+
+	public int edgeCount() {
+		return edges.size();
+	}
+
+	/**
+	 * Returns the edges in index order, each in canonical order.
+	 */
+	public ImmutableList<Pair<Node, Node>> edges() {
+		return edges;
+	}
+
+	/**
+	 * Returns the edge with the given index, in canonical order.
+	 */
+	public Pair<Node, Node> edge(int index) {
+		return edges.get(index);
+	}
+
+	/**
+	 * Returns the index of the edge between the given nodes, in either order.
+	 */
+	public int edgeIndex(Node a, Node b) {
+		int index = Math.abs(a.row() - b.row()) <= 1 && Math.abs(a.col() - b.col()) <= 1 ?
+				edgeIds[nodeIndex(a)][direction(a, b)] : -1;
+		assert index != -1 : "not an edge: "+a+" "+b;
+		return index;
+	}
+
+	/**
+	 * Returns the index of the edge between the nodes with the given indices,
+	 * in either order.
+	 */
+	public int edgeIndex(int a, int b) {
+		return edgeIndex(nodes.get(a), nodes.get(b));
+	}
+
+	/**
+	 * Returns the direction from a to b, an adjacent node, as an index into a
+	 * 3x3 neighborhood in row-major order.
+	 */
+	private static int direction(Node a, Node b) {
+		return (b.row() - a.row() + 1) * 3 + (b.col() - a.col() + 1);
+	}
+
+	/**
+	 * Returns the node index of the given edge's first node in canonical order.
+	 */
+	public int edgeFirst(int edge) {
+		return edgeFirst[edge];
+	}
+
+	/**
+	 * Returns the node index of the given edge's second node in canonical order.
+	 */
+	public int edgeSecond(int edge) {
+		return edgeSecond[edge];
+	}
+
+	/**
+	 * Returns the index of the diagonal edge crossing the given edge, or -1 if
+	 * the given edge is not diagonal or its crossing edge does not exist.
+	 */
+	public int crossingEdge(int edge) {
+		return crossingEdges[edge];
+	}
+
+	/**
+	 * Returns the indices of the nodes of the given kind.
+	 */
+	public int[] nodesOf(Node.Kind kind) {
+		return nodesOfKind[kind.ordinal()];
+	}
+
+	/**
+	 * Returns the pair of terminals for each color present, in Node.Kind
+	 * order.  These are usually not edges!
+	 */
+	public ImmutableList<Pair<Node, Node>> terminals() {
+		return terminals;
+	}
+}
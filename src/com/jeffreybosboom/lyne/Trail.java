@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import java.util.Arrays;
+
+/**
+ * An undo log of the narrowings made to a trailed Puzzle.  Each entry records
+ * an edge index and the possibility set that edge had before the narrowing, so
+ * rolling back to a checkpoint (a previous size of the trail) restores the
+ * puzzle as it was at that checkpoint.
+ * @see Puzzle#trailed()
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+final class Trail {
+	private int[] edges = new int[64];
+	private byte[] oldSets = new byte[64];
+	private int size;
+	/**
+	 * The smallest size since the last call to takeLowWater().
+	 */
+	private int lowWater;
+
+	void push(int edge, byte oldSet) {
+		if (size == edges.length) {
+			edges = Arrays.copyOf(edges, size * 2);
+			oldSets = Arrays.copyOf(oldSets, size * 2);
+		}
+		edges[size] = edge;
+		oldSets[size] = oldSet;
+		++size;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int edge(int i) {
+		assert i < size;
+		return edges[i];
+	}
+
+	byte oldSet(int i) {
+		assert i < size;
+		return oldSets[i];
+	}
+
+	void truncate(int newSize) {
+		assert 0 <= newSize && newSize <= size;
+		size = newSize;
+		lowWater = Math.min(lowWater, newSize);
+	}
+
+	/**
+	 * Returns the smallest size this trail has had since the last call to
+	 * this method (or since its creation), so the entries from there on may
+	 * have been rolled back and replaced.
+	 */
+	int takeLowWater() {
+		int lw = lowWater;
+		lowWater = size;
+		return lw;
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers search states (edge possibilities, identified by their Zobrist
+ * hash) known to have no solution, so searches reaching them again can skip
+ * them.  Within one depth-first search each state is reached at most once
+ * (sibling branches differ in the branch edge), so a table pays off when
+ * shared between searches of the same puzzle, such as repeated solves or
+ * searches with different branching orders.
+ *
+ * The table has a fixed number of two-entry buckets, so its memory use is
+ * bounded.  The first entry of each bucket keeps the state with the most
+ * undetermined edges (the largest refuted subtree) seen in that bucket; the
+ * second is replaced by every other store.  States are identified only by
+ * their 64-bit hash, so there is a negligible chance of a false refutation.
+ *
+ * Tables are thread-safe.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class TranspositionTable {
+	/**
+	 * The puzzle this table's hashes are from, as Puzzle.toString.
+	 */
+	private final String puzzle;
+	/**
+	 * Entry hashes, two per bucket; 0 is an empty entry.
+	 */
+	private final AtomicLongArray keys;
+	/**
+	 * The number of undetermined edges in each entry's state.  Only used to
+	 * choose which entry to replace, so races are harmless.
+	 */
+	private final int[] work;
+	private final int bucketMask;
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder(),
+			stores = new LongAdder(), evictions = new LongAdder();
+	/**
+	 * Creates a table for searches of the given puzzle, with room for at
+	 * least the given number of states.
+	 * @param puzzle the puzzle
+	 * @param capacity the number of states to remember
+	 */
+	public TranspositionTable(Puzzle puzzle, int capacity) {
+		checkArgument(capacity > 0 && capacity <= 1 << 30, "capacity: %s", capacity);
+		this.puzzle = puzzle.toString();
+		int buckets = 1;
+		while (buckets * 2 < capacity)
+			buckets *= 2;
+		this.keys = new AtomicLongArray(buckets * 2);
+		this.work = new int[buckets * 2];
+		this.bucketMask = buckets - 1;
+	}
+
+	/**
+	 * Returns true if this table may be used when searching the given puzzle.
+	 */
+	boolean isFor(Puzzle p) {
+		return puzzle.equals(p.toString());
+	}
+
+	/**
+	 * Returns true if the given state is known to have no solution.
+	 */
+	boolean isRefuted(Puzzle p) {
+		long key = key(p);
+		int slot = bucket(key);
+		if (keys.get(slot) == key || keys.get(slot + 1) == key) {
+			hits.increment();
+			return true;
+		}
+		misses.increment();
+		return false;
+	}
+
+	/**
+	 * Records that the given state has no solution.
+	 */
+	void refuted(Puzzle p) {
+		long key = key(p);
+		int slot = bucket(key);
+		if (keys.get(slot) == key || keys.get(slot + 1) == key)
+			return;
+		stores.increment();
+		int undetermined = p.undeterminedEdgeCount();
+		if (undetermined >= work[slot]) {
+			//demote the first entry, displacing the second
+			long demoted = keys.get(slot);
+			if (demoted != 0) {
+				if (keys.get(slot + 1) != 0)
+					evictions.increment();
+				work[slot + 1] = work[slot];
+				keys.set(slot + 1, demoted);
+			}
+			work[slot] = undetermined;
+			keys.set(slot, key);
+		} else {
+			if (keys.get(slot + 1) != 0)
+				evictions.increment();
+			work[slot + 1] = undetermined;
+			keys.set(slot + 1, key);
+		}
+	}
+
+	private static long key(Puzzle p) {
+		long hash = p.zobristHash();
+		return hash == 0 ? 1 : hash;
+	}
+
+	private int bucket(long key) {
+		return ((int)(key ^ (key >>> 32)) & bucketMask) * 2;
+	}
+
+	/**
+	 * Returns the number of states this table can hold.
+	 */
+	public int capacity() {
+		return keys.length();
+	}
+
+	/**
+	 * Returns the number of lookups that found a refuted state.
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a refuted state.
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of refuted states stored.
+	 */
+	public long stores() {
+		return stores.sum();
+	}
+
+	/**
+	 * Returns the number of stored states later displaced by another.
+	 */
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d hits, %d misses, %d stores, %d evictions (capacity %d)",
+				hits(), misses(), stores(), evictions(), capacity());
+	}
+}
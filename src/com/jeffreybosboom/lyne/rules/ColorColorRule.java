@@ -22,7 +22,7 @@ import com.google.common.collect.ImmutableSet;
 import com.jeffreybosboom.lyne.Node;
 import com.jeffreybosboom.lyne.Pair;
 import com.jeffreybosboom.lyne.Puzzle;
-import java.util.Iterator;
+import com.jeffreybosboom.lyne.Topology;
 
 /**
  * Colored nodes of different colors have no edge between them; colored nodes of
@@ -35,13 +35,14 @@ import java.util.Iterator;
 public final class ColorColorRule implements InferenceRule {
 	@Override
 	public Puzzle apply(Puzzle puzzle) {
-		for (Iterator<Pair<Node, Node>> it = puzzle.edges().iterator(); it.hasNext();) {
-			Pair<Node, Node> edge = it.next();
+		Topology topology = puzzle.topology();
+		for (int e = 0; e < topology.edgeCount(); ++e) {
+			Pair<Node, Node> edge = topology.edge(e);
 			if (!edge.first.kind().isColored() || !edge.second.kind().isColored()) continue;
 			if (edge.first.kind() != edge.second.kind())
-				puzzle = puzzle.set(edge.first, edge.second, Node.Kind.NONE);
+				puzzle = puzzle.set(e, Node.Kind.NONE);
 			else
-				puzzle = puzzle.restrict(edge.first, edge.second, ImmutableSet.of(edge.first.kind(), Node.Kind.NONE));
+				puzzle = puzzle.restrict(e, ImmutableSet.of(edge.first.kind(), Node.Kind.NONE));
 		}
 		return puzzle;
 	}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.rules;
+
+import com.google.common.collect.ImmutableSet;
+import com.jeffreybosboom.lyne.ContradictionException;
+import com.jeffreybosboom.lyne.Node;
+import com.jeffreybosboom.lyne.Pair;
+import com.jeffreybosboom.lyne.Puzzle;
+import com.jeffreybosboom.lyne.Topology;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Bounds the number of edges of each color at each node.  A color's path has
+ * odd degree only at its terminals, so a terminal has one edge of its color, a
+ * non-terminal two, and an octagon an even number of each color, totalling
+ * its desired edges.  For each node and color, the edges known to have the
+ * color give a lower bound and the edges that might have it an upper bound;
+ * at an octagon, the other colors' bounds tighten them further.
+ * <ul>
+ * <li> If no count of the right parity lies within the bounds, there's no
+ * solution.
+ * <li> If only the lower bound does, the color is removed from the undecided
+ * edges.
+ * <li> If only the upper bound does, the undecided edges are set to the
+ * color.
+ * </ul>
+ *
+ * This subsumes OctagonOneEdgeOfColorRule: an octagon with one edge allowing
+ * a color has an odd upper bound and an even lower bound of zero.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class ColorDegreeRule implements IncrementalInferenceRule {
+	private static final ImmutableSet<Node.Kind> COLORS = ImmutableSet.copyOf(
+			Stream.of(Node.Kind.values()).filter(Node.Kind::isColored).iterator());
+
+	@Override
+	public Puzzle apply(Puzzle puzzle) {
+		for (int n = 0; n < puzzle.topology().nodeCount(); ++n)
+			puzzle = apply(puzzle, n);
+		return puzzle;
+	}
+
+	@Override
+	public boolean watches(Puzzle puzzle, Pair<Node, Node> edge) {
+		return true;
+	}
+
+	@Override
+	public Puzzle apply(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		Topology topology = puzzle.topology();
+		return apply(apply(puzzle, topology.nodeIndex(changedEdge.first)), topology.nodeIndex(changedEdge.second));
+	}
+
+	@Override
+	public Stream<Pair<Node, Node>> scope(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		Topology topology = puzzle.topology();
+		return IntStream.of(topology.nodeIndex(changedEdge.first), topology.nodeIndex(changedEdge.second))
+				.flatMap(n -> IntStream.of(topology.incidentEdges(n)))
+				.distinct()
+				.mapToObj(topology::edge);
+	}
+
+	private static Puzzle apply(Puzzle puzzle, int node) {
+		Node a = puzzle.topology().node(node);
+		int[] edges = puzzle.topology().incidentEdges(node);
+		//indexed by color ordinal
+		int[] known = new int[COLORS.size()], possible = new int[COLORS.size()];
+		for (int e : edges) {
+			ImmutableSet<Node.Kind> possibilities = puzzle.possibilities(e);
+			for (Node.Kind k : possibilities)
+				if (k.isColored()) {
+					if (possibilities.size() == 1)
+						++known[k.ordinal()];
+					else
+						++possible[k.ordinal()];
+				}
+		}
+		int knownTotal = 0, upperTotal = 0;
+		for (Node.Kind k : COLORS) {
+			knownTotal += known[k.ordinal()];
+			upperTotal += known[k.ordinal()] + possible[k.ordinal()];
+		}
+
+		for (Node.Kind k : COLORS) {
+			int lower = known[k.ordinal()], upper = lower + possible[k.ordinal()];
+			int min, max;
+			if (a.kind() == Node.Kind.OCTAGON) {
+				//the other colors take at least their known edges and at most
+				//the edges that might have them
+				min = Math.max(lower, a.desiredEdges() - (upperTotal - upper));
+				max = Math.min(upper, a.desiredEdges() - (knownTotal - lower));
+				//round inward to even counts
+				min += min & 1;
+				max -= max & 1;
+			} else if (a.kind() == k) {
+				min = Math.max(lower, a.desiredEdges());
+				max = Math.min(upper, a.desiredEdges());
+			} else
+				continue;
+			if (min > max)
+				throw new ContradictionException();
+			if (lower == upper || min != max) continue;
+
+			if (max == lower) {
+				for (int e : edges)
+					if (puzzle.possibilities(e).size() > 1)
+						puzzle = puzzle.remove(e, k);
+			} else if (min == upper) {
+				for (int e : edges)
+					if (puzzle.possibilities(e).size() > 1 && puzzle.possibilities(e).contains(k))
+						puzzle = puzzle.set(e, k);
+			}
+		}
+		return puzzle;
+	}
+}
@@ -22,8 +22,7 @@ import com.google.common.collect.ImmutableSet;
 import com.jeffreybosboom.lyne.Node;
 import com.jeffreybosboom.lyne.Pair;
 import com.jeffreybosboom.lyne.Puzzle;
-import java.util.Iterator;
-import java.util.stream.Stream;
+import com.jeffreybosboom.lyne.Topology;
 
 /**
  * Edges between octagons and colored nodes may only be of that color or NONE.
@@ -35,12 +34,13 @@ import java.util.stream.Stream;
 public final class ColorOctagonRule implements InferenceRule {
 	@Override
 	public Puzzle apply(Puzzle puzzle) {
-		for (Iterator<Pair<Node, Node>> it =
-				Stream.concat(puzzle.edges(), puzzle.edges().map(Pair::opposite)).iterator();
-				it.hasNext();) {
-			Pair<Node, Node> edge = it.next();
+		Topology topology = puzzle.topology();
+		for (int e = 0; e < topology.edgeCount(); ++e) {
+			Pair<Node, Node> edge = topology.edge(e);
 			if (edge.first.kind() == Node.Kind.OCTAGON && edge.second.kind().isColored())
-				puzzle = puzzle.restrict(edge.first, edge.second, ImmutableSet.of(edge.second.kind(), Node.Kind.NONE));
+				puzzle = puzzle.restrict(e, ImmutableSet.of(edge.second.kind(), Node.Kind.NONE));
+			else if (edge.second.kind() == Node.Kind.OCTAGON && edge.first.kind().isColored())
+				puzzle = puzzle.restrict(e, ImmutableSet.of(edge.first.kind(), Node.Kind.NONE));
 		}
 		return puzzle;
 	}
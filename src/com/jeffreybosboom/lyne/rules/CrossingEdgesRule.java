@@ -21,26 +21,44 @@ package com.jeffreybosboom.lyne.rules;
 import com.jeffreybosboom.lyne.Node;
 import com.jeffreybosboom.lyne.Pair;
 import com.jeffreybosboom.lyne.Puzzle;
-import java.util.Iterator;
+import com.jeffreybosboom.lyne.Topology;
+import java.util.stream.Stream;
 
 /**
  * Diagonal edges that are not NONE imply the edge they cross must be NONE.
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 9/4/2014
  */
-public final class CrossingEdgesRule implements InferenceRule {
+public final class CrossingEdgesRule implements IncrementalInferenceRule {
 	@Override
 	public Puzzle apply(Puzzle puzzle) {
-		for (Iterator<Pair<Node, Node>> i = puzzle.edges().iterator(); i.hasNext();) {
-			Pair<Node, Node> p = i.next();
-			if (p.first.row() == p.second.row() || p.first.col() == p.second.col())
-				continue; //no crossing edge
-			if (puzzle.possibilities(p.first, p.second).contains(Node.Kind.NONE)) continue;
-			//Canonical order and not-same-row/col enforces it's a down-right edge.
-			Node ac = puzzle.at(p.first.row()+1, p.first.col()), bc = puzzle.at(p.second.row()-1, p.second.col());
-			if (ac != null && bc != null) //does the crossing edge exist?
-				puzzle = puzzle.set(ac, bc, Node.Kind.NONE);
-		}
+		for (int e = 0; e < puzzle.topology().edgeCount(); ++e)
+			puzzle = apply(puzzle, e);
 		return puzzle;
 	}
+
+	@Override
+	public boolean watches(Puzzle puzzle, Pair<Node, Node> edge) {
+		Topology topology = puzzle.topology();
+		return topology.crossingEdge(topology.edgeIndex(edge.first, edge.second)) != -1;
+	}
+
+	@Override
+	public Puzzle apply(Puzzle puzzle, Pair<Node, Node> p) {
+		return apply(puzzle, puzzle.topology().edgeIndex(p.first, p.second));
+	}
+
+	@Override
+	public Stream<Pair<Node, Node>> scope(Puzzle puzzle, Pair<Node, Node> p) {
+		Topology topology = puzzle.topology();
+		int crossing = topology.crossingEdge(topology.edgeIndex(p.first, p.second));
+		return crossing == -1 ? Stream.of(p) : Stream.of(p, topology.edge(crossing));
+	}
+
+	private static Puzzle apply(Puzzle puzzle, int edge) {
+		int crossing = puzzle.topology().crossingEdge(edge);
+		if (crossing == -1) return puzzle;
+		if (puzzle.possibilities(edge).contains(Node.Kind.NONE)) return puzzle;
+		return puzzle.set(crossing, Node.Kind.NONE);
+	}
 }
@@ -21,10 +21,11 @@ package com.jeffreybosboom.lyne.rules;
 import com.google.common.collect.ImmutableSet;
 import com.jeffreybosboom.lyne.ContradictionException;
 import com.jeffreybosboom.lyne.Node;
+import com.jeffreybosboom.lyne.Pair;
 import com.jeffreybosboom.lyne.Puzzle;
-import java.util.Iterator;
-import java.util.List;
-import java.util.stream.Collectors;
+import com.jeffreybosboom.lyne.Topology;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Applies desired-edges inference rules to all nodes:
@@ -41,43 +42,68 @@ import java.util.stream.Collectors;
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 9/4/2014
  */
-public final class DesiredEdgesRule implements InferenceRule {
+public final class DesiredEdgesRule implements IncrementalInferenceRule {
 	@Override
 	public Puzzle apply(Puzzle puzzle) {
-		for (Iterator<Node> i = puzzle.nodes().iterator(); i.hasNext();) {
-			Node a = i.next();
-			List<Node> neighbors = puzzle.neighbors(a).collect(Collectors.toList());
-			int knownColored = 0, knownNone = 0;
-			for (Node n : neighbors) {
-				ImmutableSet<Node.Kind> possibilities = puzzle.possibilities(a, n);
-				if (!possibilities.contains(Node.Kind.NONE))
-					++knownColored;
-				if (possibilities.stream().noneMatch(Node.Kind::isColored))
-					++knownNone;
-			}
-			int unknown = neighbors.size() - knownColored - knownNone;
+		for (int n = 0; n < puzzle.topology().nodeCount(); ++n)
+			puzzle = apply(puzzle, n);
+		return puzzle;
+	}
+
+	@Override
+	public boolean watches(Puzzle puzzle, Pair<Node, Node> edge) {
+		return true;
+	}
 
-			if (knownColored > a.desiredEdges())
-				throw new ContradictionException();
-			if (knownColored + unknown < a.desiredEdges())
-				throw new ContradictionException();
-			if (unknown == 0) continue;
+	@Override
+	public Puzzle apply(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		Topology topology = puzzle.topology();
+		return apply(apply(puzzle, topology.nodeIndex(changedEdge.first)), topology.nodeIndex(changedEdge.second));
+	}
 
-			//All unknown possibilities are NONE.
-			if (knownColored == a.desiredEdges())
-				for (Node n : neighbors) {
-					ImmutableSet<Node.Kind> possibilities = puzzle.possibilities(a, n);
-					if (possibilities.contains(Node.Kind.NONE) && possibilities.stream().anyMatch(Node.Kind::isColored))
-						puzzle = puzzle.set(a, n, Node.Kind.NONE);
-				}
-			//All unknown possibilities are not NONE (but we don't know which color).
-			else if (knownColored + unknown == a.desiredEdges())
-				for (Node n : neighbors) {
-					ImmutableSet<Node.Kind> possibilities = puzzle.possibilities(a, n);
-					if (possibilities.contains(Node.Kind.NONE) && possibilities.stream().anyMatch(Node.Kind::isColored))
-						puzzle = puzzle.remove(a, n, Node.Kind.NONE);
-				}
+	@Override
+	public Stream<Pair<Node, Node>> scope(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		Topology topology = puzzle.topology();
+		return IntStream.of(topology.nodeIndex(changedEdge.first), topology.nodeIndex(changedEdge.second))
+				.flatMap(n -> IntStream.of(topology.incidentEdges(n)))
+				.distinct()
+				.mapToObj(topology::edge);
+	}
+
+	private static Puzzle apply(Puzzle puzzle, int a) {
+		int desiredEdges = puzzle.topology().node(a).desiredEdges();
+		int[] edges = puzzle.topology().incidentEdges(a);
+		int knownColored = 0, knownNone = 0;
+		for (int e : edges) {
+			ImmutableSet<Node.Kind> possibilities = puzzle.possibilities(e);
+			//possibilities never include OCTAGON, so anything but {NONE} has a color
+			if (!possibilities.contains(Node.Kind.NONE))
+				++knownColored;
+			else if (possibilities.size() == 1)
+				++knownNone;
 		}
+		int unknown = edges.length - knownColored - knownNone;
+
+		if (knownColored > desiredEdges)
+			throw new ContradictionException();
+		if (knownColored + unknown < desiredEdges)
+			throw new ContradictionException();
+		if (unknown == 0) return puzzle;
+
+		//All unknown possibilities are NONE.
+		if (knownColored == desiredEdges)
+			for (int e : edges) {
+				ImmutableSet<Node.Kind> possibilities = puzzle.possibilities(e);
+				if (possibilities.contains(Node.Kind.NONE) && possibilities.size() > 1)
+					puzzle = puzzle.set(e, Node.Kind.NONE);
+			}
+		//All unknown possibilities are not NONE (but we don't know which color).
+		else if (knownColored + unknown == desiredEdges)
+			for (int e : edges) {
+				ImmutableSet<Node.Kind> possibilities = puzzle.possibilities(e);
+				if (possibilities.contains(Node.Kind.NONE) && possibilities.size() > 1)
+					puzzle = puzzle.remove(e, Node.Kind.NONE);
+			}
 		return puzzle;
 	}
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.rules;
+
+import com.jeffreybosboom.lyne.Node;
+import com.jeffreybosboom.lyne.Pair;
+import com.jeffreybosboom.lyne.Puzzle;
+import java.util.stream.Stream;
+
+/**
+ * An InferenceRule that can be reapplied to only the part of a puzzle affected
+ * by a change to one edge.  Applying the rule in full once, then incrementally
+ * for each edge it watches whenever that edge changes, makes the same
+ * deductions as applying it in full until it reaches a fixpoint.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public interface IncrementalInferenceRule extends InferenceRule {
+	/**
+	 * Returns true if a change to the given edge can enable new deductions by
+	 * this rule.  The answer must depend only on the puzzle's nodes, not on its
+	 * possibilities.
+	 * @param puzzle a puzzle
+	 * @param edge an edge in canonical order
+	 * @return true iff this rule watches the given edge
+	 */
+	public boolean watches(Puzzle puzzle, Pair<Node, Node> edge);
+
+	/**
+	 * Applies this rule to the parts of the puzzle affected by a change to the
+	 * given edge.
+	 * @param puzzle a puzzle
+	 * @param changedEdge a watched edge (in canonical order) whose
+	 * possibilities changed
+	 * @return the puzzle after making deductions
+	 */
+	public Puzzle apply(Puzzle puzzle, Pair<Node, Node> changedEdge);
+
+	/**
+	 * Returns the edges whose possibilities apply(puzzle, changedEdge) may read
+	 * or narrow, so that its deductions (and contradictions) can be explained
+	 * in terms of those edges.  Like watches(), the answer must depend only on
+	 * the puzzle's nodes.  The default implementation returns all edges,
+	 * which is always correct but explains nothing.
+	 * @param puzzle a puzzle
+	 * @param changedEdge a watched edge in canonical order
+	 * @return the edges (in canonical order) the rule depends on
+	 */
+	public default Stream<Pair<Node, Node>> scope(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		return puzzle.edges();
+	}
+}
@@ -20,8 +20,10 @@ package com.jeffreybosboom.lyne.rules;
 
 import com.google.common.collect.EnumMultiset;
 import com.jeffreybosboom.lyne.Node;
+import com.jeffreybosboom.lyne.Pair;
 import com.jeffreybosboom.lyne.Puzzle;
 import java.util.Iterator;
+import java.util.stream.Stream;
 
 /**
  * If an octagon has only one edge for a particular color, that color can be
@@ -30,25 +32,50 @@ import java.util.Iterator;
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 9/4/2014
  */
-public final class OctagonOneEdgeOfColorRule implements InferenceRule {
+public final class OctagonOneEdgeOfColorRule implements IncrementalInferenceRule {
 	@Override
 	public Puzzle apply(Puzzle puzzle) {
 		for (Iterator<Node> it = puzzle.nodes()
 				.filter(n -> n.kind() == Node.Kind.OCTAGON)
-				.iterator(); it.hasNext();) {
-			Node octagon = it.next();
-			EnumMultiset<Node.Kind> counter = EnumMultiset.create(Node.Kind.class);
-			Puzzle puzzle_ = puzzle;
-			puzzle.neighbors(octagon)
-					.map(n -> puzzle_.possibilities(octagon, n))
-					.forEachOrdered(counter::addAll);
-			for (Node.Kind k : Node.Kind.values())
-				if (k.isColored() && counter.count(k) == 1)
-					//this is inefficient, but should be rare.
-					for (Iterator<Node> it2 = puzzle.neighbors(octagon).iterator();
-							it2.hasNext();)
-						puzzle = puzzle.remove(octagon, it2.next(), k);
-		}
+				.iterator(); it.hasNext();)
+			puzzle = apply(puzzle, it.next());
+		return puzzle;
+	}
+
+	@Override
+	public boolean watches(Puzzle puzzle, Pair<Node, Node> edge) {
+		return edge.first.kind() == Node.Kind.OCTAGON || edge.second.kind() == Node.Kind.OCTAGON;
+	}
+
+	@Override
+	public Puzzle apply(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		if (changedEdge.first.kind() == Node.Kind.OCTAGON)
+			puzzle = apply(puzzle, changedEdge.first);
+		if (changedEdge.second.kind() == Node.Kind.OCTAGON)
+			puzzle = apply(puzzle, changedEdge.second);
+		return puzzle;
+	}
+
+	@Override
+	public Stream<Pair<Node, Node>> scope(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		return Stream.of(changedEdge.first, changedEdge.second)
+				.filter(n -> n.kind() == Node.Kind.OCTAGON)
+				.flatMap(o -> puzzle.neighbors(o).map(n -> Pair.sorted(o, n)))
+				.distinct();
+	}
+
+	private static Puzzle apply(Puzzle puzzle, Node octagon) {
+		EnumMultiset<Node.Kind> counter = EnumMultiset.create(Node.Kind.class);
+		Puzzle puzzle_ = puzzle;
+		puzzle.neighbors(octagon)
+				.map(n -> puzzle_.possibilities(octagon, n))
+				.forEachOrdered(counter::addAll);
+		for (Node.Kind k : Node.Kind.values())
+			if (k.isColored() && counter.count(k) == 1)
+				//this is inefficient, but should be rare.
+				for (Iterator<Node> it = puzzle.neighbors(octagon).iterator();
+						it.hasNext();)
+					puzzle = puzzle.remove(octagon, it.next(), k);
 		return puzzle;
 	}
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.rules;
+
+import com.google.common.collect.ImmutableSet;
+import com.jeffreybosboom.lyne.ContradictionException;
+import com.jeffreybosboom.lyne.Node;
+import com.jeffreybosboom.lyne.Pair;
+import com.jeffreybosboom.lyne.Puzzle;
+import com.jeffreybosboom.lyne.Topology;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A color's path is connected, so the edges that still allow a color must
+ * connect all the nodes of that color:
+ * <ul>
+ * <li> If some node of the color can't be reached from its terminals over
+ * edges allowing the color, there's no solution.
+ * <li> If removing an edge (a bridge) would separate nodes of the color, the
+ * path must use it, so it is set to the color.
+ * <li> Edges allowing the color that can't be reached from its terminals
+ * can't be on the path, so the color is removed from them.
+ * </ul>
+ *
+ * These deductions depend only on which edges allow each color, so changes
+ * that don't remove a color can't enable new ones.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class PathConnectivityRule implements IncrementalInferenceRule {
+	private static final ImmutableSet<Node.Kind> COLORS = ImmutableSet.copyOf(
+			Stream.of(Node.Kind.values()).filter(Node.Kind::isColored).iterator());
+
+	@Override
+	public Puzzle apply(Puzzle puzzle) {
+		for (Node.Kind color : COLORS)
+			puzzle = apply(puzzle, color);
+		return puzzle;
+	}
+
+	@Override
+	public boolean watches(Puzzle puzzle, Pair<Node, Node> edge) {
+		return colors(edge).findAny().isPresent();
+	}
+
+	@Override
+	public Puzzle apply(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		int edge = puzzle.topology().edgeIndex(changedEdge.first, changedEdge.second);
+		for (Node.Kind color : COLORS)
+			//if the edge still allows the color, the color's graph is unchanged
+			if (allows(changedEdge, color) && !puzzle.possibilities(edge).contains(color))
+				puzzle = apply(puzzle, color);
+		return puzzle;
+	}
+
+	@Override
+	public Stream<Pair<Node, Node>> scope(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		List<Node.Kind> colors = colors(changedEdge).collect(Collectors.toList());
+		return puzzle.edges().filter(e -> colors(e).anyMatch(colors::contains));
+	}
+
+	/**
+	 * Returns the colors the given edge could have, judging by its nodes.
+	 */
+	private static Stream<Node.Kind> colors(Pair<Node, Node> edge) {
+		return COLORS.stream().filter(k -> allows(edge, k));
+	}
+
+	private static boolean allows(Pair<Node, Node> edge, Node.Kind color) {
+		return allows(edge.first, color) && allows(edge.second, color);
+	}
+
+	private static boolean allows(Node n, Node.Kind color) {
+		return n.kind() == color || n.kind() == Node.Kind.OCTAGON;
+	}
+
+	private static Puzzle apply(Puzzle puzzle, Node.Kind color) {
+		Topology topology = puzzle.topology();
+		int[] required = topology.nodesOf(color);
+		if (required.length == 0) return puzzle;
+		Search search = new Search(puzzle, color);
+		search.visit(required[0], -1);
+		if (search.requiredSeen < required.length)
+			throw new ContradictionException();
+
+		for (int i = 0; i < search.treeEdgeCount; ++i) {
+			int[] data = search.treeEdgeData[i];
+			//no back edge from the child's subtree reaches the parent or
+			//above, and there are nodes of the color on both sides
+			if (data[1] > data[0] && data[2] > 0 && data[2] < required.length)
+				puzzle = puzzle.set(search.treeEdges[i], color);
+		}
+		for (int n = 0; n < topology.nodeCount(); ++n)
+			if (search.discovery[n] == -1)
+				for (int e : topology.incidentEdges(n))
+					puzzle = puzzle.remove(e, color);
+		return puzzle;
+	}
+
+	/**
+	 * A depth-first search of the graph of edges allowing one color, finding
+	 * bridges (Tarjan's lowpoint method) and counting the nodes of that color
+	 * on each side of them.
+	 */
+	private static final class Search {
+		private final Puzzle puzzle;
+		private final Topology topology;
+		private final Node.Kind color;
+		/**
+		 * The discovery time of each node, or -1 if not reached.
+		 */
+		private final int[] discovery;
+		private int time;
+		/**
+		 * Tree edges leading to each visited child, with the parent's
+		 * discovery time, the child's lowpoint and the number of nodes of the
+		 * color in the child's subtree.
+		 */
+		private final int[] treeEdges;
+		private final int[][] treeEdgeData;
+		private int treeEdgeCount;
+		private int requiredSeen;
+		Search(Puzzle puzzle, Node.Kind color) {
+			this.puzzle = puzzle;
+			this.topology = puzzle.topology();
+			this.color = color;
+			this.discovery = new int[topology.nodeCount()];
+			Arrays.fill(discovery, -1);
+			//a spanning tree has fewer edges than nodes
+			this.treeEdges = new int[topology.nodeCount()];
+			this.treeEdgeData = new int[topology.nodeCount()][];
+		}
+
+		/**
+		 * Visits the given node, returning {lowpoint, nodes of the color in
+		 * its subtree}.
+		 */
+		int[] visit(int n, int parentEdge) {
+			int d = time++;
+			discovery[n] = d;
+			int low = d, required = 0;
+			if (topology.node(n).kind() == color) {
+				++required;
+				++requiredSeen;
+			}
+			int[] neighbors = topology.neighbors(n), edges = topology.incidentEdges(n);
+			for (int i = 0; i < neighbors.length; ++i) {
+				int m = neighbors[i], e = edges[i];
+				if (e == parentEdge || !puzzle.possibilities(e).contains(color)) continue;
+				if (discovery[m] != -1) {
+					low = Math.min(low, discovery[m]);
+					continue;
+				}
+				int[] child = visit(m, e);
+				treeEdges[treeEdgeCount] = e;
+				treeEdgeData[treeEdgeCount++] = new int[]{d, child[0], child[1]};
+				low = Math.min(low, child[0]);
+				required += child[1];
+			}
+			return new int[]{low, required};
+		}
+	}
+}
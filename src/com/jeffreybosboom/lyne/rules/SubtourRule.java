@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.rules;
+
+import com.jeffreybosboom.lyne.ContradictionException;
+import com.jeffreybosboom.lyne.Node;
+import com.jeffreybosboom.lyne.Pair;
+import com.jeffreybosboom.lyne.Puzzle;
+import com.jeffreybosboom.lyne.Topology;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Eliminates subtours: cycles of a color that can't be part of that color's
+ * path.  Colored nodes have at most two edges of their color, so the edges
+ * known to have a color form chains between those nodes, ending at open nodes
+ * or octagons.
+ * <ul>
+ * <li> A chain that closes into a cycle can't contain the terminals, so
+ * there's no solution.
+ * <li> If both ends of a chain of two or more edges are open non-terminals,
+ * the edge between them (if any) would close a cycle, so it can't have the
+ * color.
+ * <li> A chain between the two terminals is the whole path, so there's no
+ * solution if nodes of its color aren't on it.
+ * </ul>
+ * Cycles through octagons are allowed, as a path may visit an octagon more
+ * than once; the PathConnectivityRule finds those that are detached.
+ *
+ * Chains only grow when an edge between nodes of the same color is set to
+ * that color, so this rule need only walk the chain through that edge.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class SubtourRule implements IncrementalInferenceRule {
+	@Override
+	public Puzzle apply(Puzzle puzzle) {
+		for (Iterator<Pair<Node, Node>> it = puzzle.edges().filter(SubtourRule::isChainEdge).iterator(); it.hasNext();)
+			puzzle = apply(puzzle, it.next());
+		return puzzle;
+	}
+
+	@Override
+	public boolean watches(Puzzle puzzle, Pair<Node, Node> edge) {
+		return isChainEdge(edge);
+	}
+
+	@Override
+	public Puzzle apply(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		Topology topology = puzzle.topology();
+		Node.Kind color = changedEdge.first.kind();
+		int edge = topology.edgeIndex(changedEdge.first, changedEdge.second);
+		if (!hasOnly(puzzle, edge, color))
+			return puzzle;
+		int first = topology.nodeIndex(changedEdge.first), second = topology.nodeIndex(changedEdge.second);
+		int[] length = {1};
+		int end1 = walk(puzzle, first, edge, second, length);
+		if (end1 == second)
+			throw new ContradictionException(); //closed a cycle
+		int end2 = walk(puzzle, second, edge, first, length);
+		if (end1 == -1 || end2 == -1)
+			return puzzle; //ends at an octagon
+
+		boolean terminal1 = topology.node(end1).isTerminal(), terminal2 = topology.node(end2).isTerminal();
+		if (terminal1 && terminal2) {
+			//length counts edges; a path has one more node than edges
+			if (length[0] + 1 < topology.nodesOf(color).length)
+				throw new ContradictionException();
+		} else if (length[0] > 1 && !terminal1 && !terminal2) {
+			int[] neighbors = topology.neighbors(end1);
+			for (int i = 0; i < neighbors.length; ++i)
+				if (neighbors[i] == end2)
+					puzzle = puzzle.remove(topology.incidentEdges(end1)[i], color);
+		}
+		return puzzle;
+	}
+
+	@Override
+	public Stream<Pair<Node, Node>> scope(Puzzle puzzle, Pair<Node, Node> changedEdge) {
+		//chains may run through any node of this color
+		Node.Kind color = changedEdge.first.kind();
+		return puzzle.edges().filter(e -> e.first.kind() == color || e.second.kind() == color);
+	}
+
+	/**
+	 * Edges between nodes of the same color are the edges that can extend a
+	 * chain.
+	 */
+	private static boolean isChainEdge(Pair<Node, Node> edge) {
+		return edge.first.kind().isColored() && edge.first.kind() == edge.second.kind();
+	}
+
+	/**
+	 * Follows the chain of edges of start's color from start, away from
+	 * the given edge to origin, adding the number of edges followed to
+	 * length[0].
+	 *
+	 * Mid-propagation, a node may have more than two edges of its color before
+	 * the rules checking its degree have run, and those edges may form a cycle
+	 * not through origin; such nodes are a contradiction, and the walk is
+	 * bounded so it can't circle forever regardless.
+	 * @return the node index at the end of the chain (origin if the chain is
+	 * a cycle), or -1 if it ends at an octagon
+	 * @throws ContradictionException if a node on the chain has more than two
+	 * edges of its color
+	 */
+	private static int walk(Puzzle puzzle, int start, int originEdge, int origin, int[] length) {
+		Topology topology = puzzle.topology();
+		Node.Kind color = topology.node(start).kind();
+		int prevEdge = originEdge, cur = start;
+		for (int steps = 0; steps < topology.nodeCount(); ++steps) {
+			int[] neighbors = topology.neighbors(cur), edges = topology.incidentEdges(cur);
+			int next = -1, nextEdge = -1, colored = 0;
+			for (int i = 0; i < edges.length; ++i)
+				if (hasOnly(puzzle, edges[i], color)) {
+					++colored;
+					if (next == -1 && edges[i] != prevEdge) {
+						next = neighbors[i];
+						nextEdge = edges[i];
+					}
+				}
+			if (colored > 2)
+				throw new ContradictionException();
+			if (next == -1)
+				return cur;
+			++length[0];
+			if (next == origin)
+				return origin;
+			if (topology.node(next).kind() == Node.Kind.OCTAGON)
+				return -1;
+			prevEdge = nextEdge;
+			cur = next;
+		}
+		//a chain visits each node at most once, so we're circling a cycle
+		throw new ContradictionException();
+	}
+
+	private static boolean hasOnly(Puzzle puzzle, int edge, Node.Kind color) {
+		Set<Node.Kind> possibilities = puzzle.possibilities(edge);
+		return possibilities.size() == 1 && possibilities.contains(color);
+	}
+}
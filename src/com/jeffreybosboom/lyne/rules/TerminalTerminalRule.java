@@ -21,8 +21,7 @@ package com.jeffreybosboom.lyne.rules;
 import com.jeffreybosboom.lyne.Node;
 import com.jeffreybosboom.lyne.Pair;
 import com.jeffreybosboom.lyne.Puzzle;
-import java.util.Iterator;
-import java.util.function.Predicate;
+import com.jeffreybosboom.lyne.Topology;
 
 /**
  * Two terminals cannot be directly connected if there are other nodes of that
@@ -35,11 +34,14 @@ import java.util.function.Predicate;
 public final class TerminalTerminalRule implements InferenceRule {
 	@Override
 	public Puzzle apply(Puzzle puzzle) {
-		for (Iterator<Pair<Node, Node>> it = puzzle.terminals().iterator(); it.hasNext();) {
-			Pair<Node, Node> terminals = it.next();
-			if (puzzle.neighbors(terminals.first).anyMatch(Predicate.isEqual(terminals.second)) &&
-					puzzle.nodes().filter(n -> n.kind() == terminals.first.kind()).count() > 2)
-				puzzle = puzzle.set(terminals.first, terminals.second, Node.Kind.NONE);
+		Topology topology = puzzle.topology();
+		for (Pair<Node, Node> terminals : topology.terminals()) {
+			if (topology.nodesOf(terminals.first.kind()).length <= 2) continue;
+			int first = topology.nodeIndex(terminals.first), second = topology.nodeIndex(terminals.second);
+			int[] neighbors = topology.neighbors(first);
+			for (int i = 0; i < neighbors.length; ++i)
+				if (neighbors[i] == second)
+					puzzle = puzzle.set(topology.incidentEdges(first)[i], Node.Kind.NONE);
 		}
 		return puzzle;
 	}
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.lyne.sat;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A small conflict-driven clause learning SAT solver: two watched literals,
+ * first-UIP learning with non-chronological backjumping, VSIDS variable
+ * activity with phase saving, and Luby restarts.  Learned clauses are kept
+ * forever, which is fine for the few-thousand-variable problems puzzles
+ * produce.
+ *
+ * The solver is incremental: clauses may be added after solve() returns, and
+ * solve() may be called again, keeping what was learned.
+ *
+ * Variables are numbered from 0.  Literals are ints: 2v for variable v, 2v+1
+ * for its negation (see lit()).  Not thread-safe.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+public final class SatSolver {
+	public enum Result {SATISFIABLE, UNSATISFIABLE, CANCELLED}
+	private static final int RESTART_UNIT = 100;
+	private static final double VAR_DECAY = 0.95, RESCALE_LIMIT = 1e100;
+	private int varCount;
+	private final List<int[]> clauses = new ArrayList<>();
+	/**
+	 * The clauses watching each literal (those in which it is one of the first
+	 * two literals), as clause indices, indexed by literal.
+	 */
+	private int[][] watches = new int[0][];
+	private int[] watchSizes = new int[0];
+	/**
+	 * Each variable's value: 1 if true, -1 if false, 0 if unassigned.
+	 */
+	private byte[] values = new byte[0];
+	private int[] levels = new int[0], reasons = new int[0];
+	private boolean[] phases = new boolean[0], seen = new boolean[0];
+	private int[] trail = new int[0];
+	private int trailSize, propagateHead;
+	/**
+	 * The trail size at the start of each decision level.
+	 */
+	private int[] levelStarts = new int[1];
+	private int decisionLevel;
+	private double[] activity = new double[0];
+	private double activityIncrement = 1;
+	/**
+	 * A max-heap of variables by activity, and each variable's position in it
+	 * (or -1).  Assigned variables are removed lazily.
+	 */
+	private int[] heap = new int[0], heapPositions = new int[0];
+	private int heapSize;
+	/**
+	 * True once a contradiction is found without decisions; the solver then
+	 * stays unsatisfiable.
+	 */
+	private boolean unsatisfiable;
+	private long conflicts, decisions, propagations;
+
+	/**
+	 * Returns the literal for the given variable or its negation.
+	 */
+	public static int lit(int var, boolean positive) {
+		return 2 * var + (positive ? 0 : 1);
+	}
+
+	/**
+	 * Returns a new variable.
+	 */
+	public int newVar() {
+		int v = varCount++;
+		if (v == values.length) {
+			int n = Math.max(16, 2 * values.length);
+			values = Arrays.copyOf(values, n);
+			levels = Arrays.copyOf(levels, n);
+			reasons = Arrays.copyOf(reasons, n);
+			phases = Arrays.copyOf(phases, n);
+			seen = Arrays.copyOf(seen, n);
+			trail = Arrays.copyOf(trail, n);
+			activity = Arrays.copyOf(activity, n);
+			heap = Arrays.copyOf(heap, n);
+			heapPositions = Arrays.copyOf(heapPositions, n);
+			int oldLits = watches.length;
+			watches = Arrays.copyOf(watches, 2 * n);
+			watchSizes = Arrays.copyOf(watchSizes, 2 * n);
+			for (int l = oldLits; l < watches.length; ++l)
+				watches[l] = new int[4];
+		}
+		reasons[v] = -1;
+		heapPositions[v] = -1;
+		heapInsert(v);
+		return v;
+	}
+
+	public int varCount() {
+		return varCount;
+	}
+
+	/**
+	 * Adds a clause: at least one of the given literals must be true.  Any
+	 * model from the previous solve() is discarded.
+	 * @param lits the clause's literals
+	 * @return false if the solver is now known to be unsatisfiable
+	 */
+	public boolean addClause(int... lits) {
+		cancelUntil(0);
+		if (unsatisfiable) return false;
+		int[] clause = new int[lits.length];
+		int size = 0;
+		outer: for (int l : lits) {
+			checkArgument(0 <= l && l < 2 * varCount, "bad literal %s", l);
+			int value = litValue(l);
+			if (value == 1) return true; //already satisfied
+			if (value == -1) continue; //can't help
+			for (int i = 0; i < size; ++i) {
+				if (clause[i] == l) continue outer;
+				if (clause[i] == (l ^ 1)) return true; //tautology
+			}
+			clause[size++] = l;
+		}
+		if (size == 0) {
+			unsatisfiable = true;
+			return false;
+		}
+		if (size == 1) {
+			enqueue(clause[0], -1);
+			if (propagate() != -1)
+				unsatisfiable = true;
+			return !unsatisfiable;
+		}
+		attach(Arrays.copyOf(clause, size));
+		return true;
+	}
+
+	/**
+	 * Searches for a model, giving up when the given supplier returns true.
+	 * If satisfiable, the model can be read with value() until the next call
+	 * to addClause() or solve().
+	 * @param cancelled polled at each decision; returns true to give up
+	 * @return the result
+	 */
+	public Result solve(BooleanSupplier cancelled) {
+		cancelUntil(0);
+		if (unsatisfiable || propagate() != -1) {
+			unsatisfiable = true;
+			return Result.UNSATISFIABLE;
+		}
+		for (int restart = 0; ; ++restart) {
+			Result result = search(luby(restart) * RESTART_UNIT, cancelled);
+			if (result != null) return result;
+			cancelUntil(0);
+		}
+	}
+
+	/**
+	 * Returns the given variable's value in the model found by the last call
+	 * to solve().
+	 */
+	public boolean value(int var) {
+		checkState(values[var] != 0, "no model");
+		return values[var] == 1;
+	}
+
+	public long conflicts() {
+		return conflicts;
+	}
+
+	public long decisions() {
+		return decisions;
+	}
+
+	public long propagations() {
+		return propagations;
+	}
+
+	/**
+	 * Searches until a model is found, unsatisfiability is proven, the search
+	 * is cancelled, or the given number of conflicts occurs (returning null to
+	 * request a restart).
+	 */
+	private Result search(long conflictLimit, BooleanSupplier cancelled) {
+		long conflictsHere = 0;
+		while (true) {
+			int conflict = propagate();
+			if (conflict != -1) {
+				++conflicts;
+				++conflictsHere;
+				if (decisionLevel == 0) {
+					unsatisfiable = true;
+					return Result.UNSATISFIABLE;
+				}
+				learn(conflict);
+				continue;
+			}
+			if (conflictsHere >= conflictLimit)
+				return null;
+			if (cancelled.getAsBoolean()) {
+				cancelUntil(0);
+				return Result.CANCELLED;
+			}
+			int v = pickBranchVar();
+			if (v == -1)
+				return Result.SATISFIABLE;
+			++decisions;
+			if (decisionLevel + 1 == levelStarts.length)
+				levelStarts = Arrays.copyOf(levelStarts, levelStarts.length * 2);
+			levelStarts[++decisionLevel] = trailSize;
+			enqueue(lit(v, phases[v]), -1);
+		}
+	}
+
+	/**
+	 * Propagates the trail, returning the index of a conflicting clause or -1.
+	 */
+	private int propagate() {
+		while (propagateHead < trailSize) {
+			int falseLit = trail[propagateHead++] ^ 1;
+			++propagations;
+			int[] ws = watches[falseLit];
+			int n = watchSizes[falseLit], i = 0, j = 0;
+			while (i < n) {
+				int ci = ws[i++];
+				int[] c = clauses.get(ci);
+				//keep the false literal in position 1
+				if (c[0] == falseLit) {
+					c[0] = c[1];
+					c[1] = falseLit;
+				}
+				if (litValue(c[0]) == 1) {
+					ws[j++] = ci;
+					continue;
+				}
+				boolean moved = false;
+				for (int k = 2; k < c.length; ++k)
+					if (litValue(c[k]) != -1) {
+						c[1] = c[k];
+						c[k] = falseLit;
+						watch(c[1], ci);
+						moved = true;
+						break;
+					}
+				if (moved) continue;
+				ws[j++] = ci;
+				if (litValue(c[0]) == -1) {
+					while (i < n)
+						ws[j++] = ws[i++];
+					watchSizes[falseLit] = j;
+					return ci;
+				}
+				enqueue(c[0], ci);
+			}
+			watchSizes[falseLit] = j;
+		}
+		return -1;
+	}
+
+	/**
+	 * Learns the first-UIP clause of the given conflict, backjumps, and
+	 * asserts the clause.
+	 */
+	private void learn(int conflict) {
+		List<Integer> learnt = new ArrayList<>();
+		learnt.add(-1); //the asserting literal, filled in below
+		int pending = 0, p = -1, index = trailSize - 1;
+		do {
+			int[] c = clauses.get(conflict);
+			//skip the implied literal of a reason clause
+			for (int k = p == -1 ? 0 : 1; k < c.length; ++k) {
+				int v = c[k] >> 1;
+				if (seen[v] || levels[v] == 0) continue;
+				seen[v] = true;
+				bump(v);
+				if (levels[v] == decisionLevel)
+					++pending;
+				else
+					learnt.add(c[k]);
+			}
+			while (!seen[trail[index] >> 1])
+				--index;
+			p = trail[index--];
+			conflict = reasons[p >> 1];
+			seen[p >> 1] = false;
+			--pending;
+		} while (pending > 0);
+		learnt.set(0, p ^ 1);
+
+		int backjumpLevel = 0, second = -1;
+		for (int i = 1; i < learnt.size(); ++i) {
+			seen[learnt.get(i) >> 1] = false;
+			int level = levels[learnt.get(i) >> 1];
+			if (level > backjumpLevel) {
+				backjumpLevel = level;
+				second = i;
+			}
+		}
+		int[] clause = new int[learnt.size()];
+		for (int i = 0; i < clause.length; ++i)
+			clause[i] = learnt.get(i);
+		if (second != -1) {
+			//watch the literal that will be unassigned last
+			clause[second] = clause[1];
+			clause[1] = learnt.get(second);
+		}
+		cancelUntil(backjumpLevel);
+		if (clause.length == 1)
+			enqueue(clause[0], -1);
+		else
+			enqueue(clause[0], attach(clause));
+		decay();
+	}
+
+	private int attach(int[] clause) {
+		int ci = clauses.size();
+		clauses.add(clause);
+		watch(clause[0], ci);
+		watch(clause[1], ci);
+		return ci;
+	}
+
+	private void watch(int lit, int ci) {
+		if (watchSizes[lit] == watches[lit].length)
+			watches[lit] = Arrays.copyOf(watches[lit], watches[lit].length * 2);
+		watches[lit][watchSizes[lit]++] = ci;
+	}
+
+	private int litValue(int lit) {
+		int v = values[lit >> 1];
+		return (lit & 1) == 0 ? v : -v;
+	}
+
+	private void enqueue(int lit, int reason) {
+		int v = lit >> 1;
+		assert values[v] == 0;
+		values[v] = (byte)((lit & 1) == 0 ? 1 : -1);
+		levels[v] = decisionLevel;
+		reasons[v] = reason;
+		trail[trailSize++] = lit;
+	}
+
+	private void cancelUntil(int level) {
+		if (decisionLevel <= level) return;
+		for (int i = trailSize - 1; i >= levelStarts[level + 1]; --i) {
+			int v = trail[i] >> 1;
+			phases[v] = values[v] == 1;
+			values[v] = 0;
+			reasons[v] = -1;
+			if (heapPositions[v] == -1)
+				heapInsert(v);
+		}
+		trailSize = propagateHead = levelStarts[level + 1];
+		decisionLevel = level;
+	}
+
+	private int pickBranchVar() {
+		while (heapSize > 0) {
+			int v = heapRemoveTop();
+			if (values[v] == 0)
+				return v;
+		}
+		return -1;
+	}
+
+	private void bump(int v) {
+		activity[v] += activityIncrement;
+		if (activity[v] > RESCALE_LIMIT) {
+			for (int i = 0; i < varCount; ++i)
+				activity[i] /= RESCALE_LIMIT;
+			activityIncrement /= RESCALE_LIMIT;
+		}
+		if (heapPositions[v] != -1)
+			siftUp(heapPositions[v]);
+	}
+
+	private void decay() {
+		activityIncrement /= VAR_DECAY;
+	}
+
+	/**
+	 * Returns the i'th element (from 0) of the Luby sequence 1, 1, 2, 1, 1, 2,
+	 * 4, 1, ...
+	 */
+	private static long luby(int i) {
+		//find the finite subsequence containing i, and i's position in it
+		int size = 1, seq = 0;
+		while (size < i + 1) {
+			++seq;
+			size = 2 * size + 1;
+		}
+		while (size - 1 != i) {
+			size = (size - 1) >> 1;
+			--seq;
+			i %= size;
+		}
+		return 1L << seq;
+	}
+
+	private void heapInsert(int v) {
+		heap[heapSize] = v;
+		heapPositions[v] = heapSize++;
+		siftUp(heapSize - 1);
+	}
+
+	private int heapRemoveTop() {
+		int top = heap[0];
+		heapPositions[top] = -1;
+		if (--heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPositions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int i) {
+		int v = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (activity[heap[parent]] >= activity[v]) break;
+			heap[i] = heap[parent];
+			heapPositions[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = v;
+		heapPositions[v] = i;
+	}
+
+	private void siftDown(int i) {
+		int v = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) break;
+			if (child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]])
+				++child;
+			if (activity[heap[child]] <= activity[v]) break;
+			heap[i] = heap[child];
+			heapPositions[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = v;
+		heapPositions[v] = i;
+	}
+}
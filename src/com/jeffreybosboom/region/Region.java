@@ -18,16 +18,17 @@
 
 package com.jeffreybosboom.region;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Deque;
-import java.util.IntSummaryStatistics;
-import java.util.List;
 import java.util.Set;
 
 /**
@@ -40,15 +41,59 @@ public final class Region {
 	 * as from BufferedImage.getRGB
 	 */
 	private final int color;
-	private final ImmutableList<Point> points;
-	private final IntSummaryStatistics xStats, yStats;
-	private Region(int color, List<Point> points) {
+	/**
+	 * The pixels in this region, as indices y * imageWidth + x, or null if
+	 * this region is a summary.
+	 */
+	private final int[] pixels;
+	/**
+	 * If this region is a summary, the image it was found in, from which its
+	 * pixels are recomputed when needed; otherwise null.
+	 */
+	private final BufferedImage image;
+	private final int imageWidth;
+	/**
+	 * The index of this region's first pixel in row-major order.
+	 */
+	private final int seed;
+	private final int size;
+	private final long sumX, sumY;
+	private final int minX, maxX, minY, maxY;
+	/**
+	 * Lazily materialized from pixels or image.  (Racy, but ImmutableList is
+	 * safe to publish without synchronization.)
+	 */
+	private ImmutableList<Point> points;
+	/**
+	 * Lazily materialized from pixels or image; see mask().
+	 */
+	private BitSet mask;
+	Region(int color, int[] pixels, int imageWidth, long sumX, long sumY, int minX, int maxX, int minY, int maxY) {
+		this(color, pixels, null, imageWidth, Ints.min(pixels), pixels.length, sumX, sumY, minX, maxX, minY, maxY);
+	}
+
+	/**
+	 * Creates a summary region, which does not store its pixels.
+	 */
+	Region(int color, BufferedImage image, int seed, int size, long sumX, long sumY, int minX, int maxX, int minY, int maxY) {
+		this(color, null, image, image.getWidth(), seed, size, sumX, sumY, minX, maxX, minY, maxY);
+	}
+
+	private Region(int color, int[] pixels, BufferedImage image, int imageWidth, int seed, int size, long sumX, long sumY, int minX, int maxX, int minY, int maxY) {
+		assert size > 0;
+		assert (pixels == null) != (image == null);
 		this.color = color;
-		this.points = ImmutableList.copyOf(points);
-		//TODO: lazy initialize?
-		//TODO: compute in one pass?
-		this.xStats = this.points.stream().mapToInt(Point::x).summaryStatistics();
-		this.yStats = this.points.stream().mapToInt(Point::y).summaryStatistics();
+		this.pixels = pixels;
+		this.image = image;
+		this.imageWidth = imageWidth;
+		this.seed = seed;
+		this.size = size;
+		this.sumX = sumX;
+		this.sumY = sumY;
+		this.minX = minX;
+		this.maxX = maxX;
+		this.minY = minY;
+		this.maxY = maxY;
 	}
 
 	private static final int[][] NEIGHBORHOOD = {
@@ -57,60 +102,239 @@ public final class Region {
 		{1, -1}, {1, 0}, {1, 1},
 	};
 	public static ImmutableSet<Region> connectedComponents(BufferedImage image, Set<Integer> interestingColors) {
-		final int imageSize = image.getWidth() * image.getHeight();
-		BitSet processed = new BitSet(imageSize);
-		for (int x = 0; x < image.getWidth(); ++x)
-			for (int y = 0; y < image.getHeight(); ++y)
-				if (!interestingColors.contains(image.getRGB(x, y)))
-					processed.set(y * image.getWidth() + x);
+		return floodFill(image, interestingColors, true);
+	}
+
+	/**
+	 * Finds the same regions as connectedComponents(BufferedImage, Set), but
+	 * as summaries: each region stores only its size, centroid and bounding
+	 * box, not its pixels, so labelling large regions allocates almost
+	 * nothing.  Each region retains a reference to the image, from which its
+	 * pixels are recomputed on demand by points() or contains(), so the image
+	 * must not be modified while they might be called.
+	 * @param image the image to label
+	 * @param interestingColors the colors (as from BufferedImage.getRGB) to
+	 * find regions of
+	 * @return the regions, in the same order as connectedComponents(BufferedImage, Set)
+	 */
+	public static ImmutableSet<Region> summarizeComponents(BufferedImage image, Set<Integer> interestingColors) {
+		return floodFill(image, interestingColors, false);
+	}
+
+	private static ImmutableSet<Region> floodFill(BufferedImage image, Set<Integer> interestingColors, boolean keepPixels) {
+		final int width = image.getWidth(), height = image.getHeight();
+		final int[] rgb = pixels(image);
+		//TYPE_INT_RGB rasters don't store alpha, but getRGB reports it opaque
+		final int alpha = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+		final int[] interesting = Ints.toArray(interestingColors);
+		final int[] neighborOffsets = new int[NEIGHBORHOOD.length];
+		for (int i = 0; i < NEIGHBORHOOD.length; ++i)
+			neighborOffsets[i] = NEIGHBORHOOD[i][1] * width + NEIGHBORHOOD[i][0];
 
 		ImmutableSet.Builder<Region> builder = ImmutableSet.builder();
-		int lastClearBit = 0;
-		while ((lastClearBit = processed.nextClearBit(lastClearBit)) != imageSize) {
-			int fillY = lastClearBit / image.getWidth(), fillX = lastClearBit % image.getWidth();
-			int color = image.getRGB(fillX, fillY);
-			List<Point> points = new ArrayList<>();
-
-			//flood fill
-			Deque<Point> frontier = new ArrayDeque<>();
-			frontier.push(new Point(fillX, fillY));
-			while (!frontier.isEmpty()) {
-				Point p = frontier.pop();
-				int bitIndex = p.row() * image.getWidth() + p.col();
-				if (processed.get(bitIndex)) continue;
-				if (image.getRGB(p.x, p.y) != color) continue;
-
-				points.add(p);
-				processed.set(bitIndex);
-				for (int[] n : NEIGHBORHOOD) {
-					int nx = p.x + n[0], ny = p.y + n[1];
-					int nBitIndex = nx + ny * image.getWidth();
-					if (0 <= nx && nx < image.getWidth()&& 0 <= ny && ny < image.getHeight()
-							&& !processed.get(nBitIndex))
-						frontier.push(new Point(nx, ny));
+		//pixels are marked when pushed, so each is pushed at most once
+		boolean[] marked = new boolean[width * height];
+		int[] stack = new int[64];
+		for (int seed = 0; seed < rgb.length; ++seed) {
+			if (marked[seed]) continue;
+			final int color = rgb[seed] | alpha;
+			if (!contains(interesting, color)) continue;
+
+			//flood fill, collecting pixels (if requested) and statistics as we go
+			int[] pixels = keepPixels ? new int[16] : null;
+			int count = 0;
+			long sumX = 0, sumY = 0;
+			int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+			int stackSize = 0;
+			stack[stackSize++] = seed;
+			marked[seed] = true;
+			while (stackSize > 0) {
+				int p = stack[--stackSize];
+				int x = p % width, y = p / width;
+				if (keepPixels) {
+					if (count == pixels.length)
+						pixels = Arrays.copyOf(pixels, count * 2);
+					pixels[count] = p;
+				}
+				++count;
+				sumX += x;
+				sumY += y;
+				minX = Math.min(minX, x);
+				maxX = Math.max(maxX, x);
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+
+				//interior pixels need no bounds checks
+				boolean interior = 0 < x && x < width - 1 && 0 < y && y < height - 1;
+				for (int i = 0; i < NEIGHBORHOOD.length; ++i) {
+					if (!interior) {
+						int nx = x + NEIGHBORHOOD[i][0], ny = y + NEIGHBORHOOD[i][1];
+						if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+					}
+					int n = p + neighborOffsets[i];
+					if (marked[n] || (rgb[n] | alpha) != color) continue;
+					marked[n] = true;
+					if (stackSize == stack.length)
+						stack = Arrays.copyOf(stack, stackSize * 2);
+					stack[stackSize++] = n;
 				}
 			}
-			assert !points.isEmpty();
-			builder.add(new Region(color, points));
+			builder.add(keepPixels ?
+					new Region(color, Arrays.copyOf(pixels, count), width, sumX, sumY, minX, maxX, minY, maxY) :
+					new Region(color, image, seed, count, sumX, sumY, minX, maxX, minY, maxY));
 		}
 		return builder.build();
 	}
 
+	/**
+	 * Finds the same regions as connectedComponents(BufferedImage, Set), but
+	 * using a two-pass scanline algorithm with a union-find equivalence table.
+	 * The image is divided into the given number of horizontal strips, which
+	 * are labelled in parallel and then merged at their seams, so large images
+	 * label faster on multiple cores.
+	 * @param image the image to label
+	 * @param interestingColors the colors (as from BufferedImage.getRGB) to
+	 * find regions of
+	 * @param strips the number of strips to label in parallel
+	 * @return the regions, in the same order as connectedComponents(BufferedImage, Set)
+	 */
+	public static ImmutableSet<Region> connectedComponents(BufferedImage image, Set<Integer> interestingColors, int strips) {
+		checkArgument(strips > 0, "strips: %s", strips);
+		return TwoPassLabeling.connectedComponents(image, interestingColors, strips, true);
+	}
+
+	/**
+	 * Finds the same regions as summarizeComponents(BufferedImage, Set), but
+	 * using the two-pass algorithm of connectedComponents(BufferedImage, Set, int).
+	 * @param image the image to label
+	 * @param interestingColors the colors (as from BufferedImage.getRGB) to
+	 * find regions of
+	 * @param strips the number of strips to label in parallel
+	 * @return the regions, in the same order as connectedComponents(BufferedImage, Set)
+	 */
+	public static ImmutableSet<Region> summarizeComponents(BufferedImage image, Set<Integer> interestingColors, int strips) {
+		checkArgument(strips > 0, "strips: %s", strips);
+		return TwoPassLabeling.connectedComponents(image, interestingColors, strips, false);
+	}
+
+	/**
+	 * Returns the given image's pixels in row-major order, as from
+	 * BufferedImage.getRGB but possibly without alpha.  For the common
+	 * integer-packed image types, this returns the raster's backing array
+	 * without copying, so callers must not modify the returned array.  (For
+	 * TYPE_INT_RGB, alpha is not stored.)
+	 */
+	public static int[] pixels(BufferedImage image) {
+		int type = image.getType();
+		WritableRaster raster = image.getRaster();
+		if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+				&& raster.getDataBuffer() instanceof DataBufferInt
+				&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+				&& raster.getParent() == null) {
+			DataBufferInt buffer = (DataBufferInt)raster.getDataBuffer();
+			SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel)raster.getSampleModel();
+			if (buffer.getNumBanks() == 1 && buffer.getOffset() == 0
+					&& sampleModel.getScanlineStride() == image.getWidth()
+					&& buffer.getData().length == image.getWidth() * image.getHeight())
+				return buffer.getData();
+		}
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	static boolean contains(int[] array, int value) {
+		for (int x : array)
+			if (x == value)
+				return true;
+		return false;
+	}
+
 	public int color() {
 		return color;
 	}
 
+	/**
+	 * Returns the number of pixels in this region.  Equivalent to
+	 * points().size(), but does not materialize the points.
+	 */
+	public int size() {
+		return size;
+	}
+
 	public ImmutableList<Point> points() {
+		ImmutableList<Point> points = this.points;
+		if (points == null) {
+			ImmutableList.Builder<Point> builder = ImmutableList.builder();
+			if (pixels != null)
+				for (int p : pixels)
+					builder.add(new Point(p % imageWidth, p / imageWidth));
+			else {
+				BitSet mask = mask();
+				int maskWidth = maxX - minX + 1;
+				for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1))
+					builder.add(new Point(minX + i % maskWidth, minY + i / maskWidth));
+			}
+			this.points = points = builder.build();
+		}
 		return points;
 	}
 
+	/**
+	 * Returns true if the given pixel is in this region.  The first call
+	 * materializes a bit mask of this region's bounding box.
+	 */
+	public boolean contains(int x, int y) {
+		if (x < minX || x > maxX || y < minY || y > maxY)
+			return false;
+		return mask().get((y - minY) * (maxX - minX + 1) + (x - minX));
+	}
+
+	/**
+	 * Returns a mask of this region's pixels within its bounding box, in
+	 * row-major order.  The mask is computed on the first call, from the stored
+	 * pixels, or for summaries, by flood filling the image again from the seed.
+	 */
+	private synchronized BitSet mask() {
+		if (mask != null) return mask;
+		int maskWidth = maxX - minX + 1, maskHeight = maxY - minY + 1;
+		BitSet mask = new BitSet(maskWidth * maskHeight);
+		if (pixels != null)
+			for (int p : pixels)
+				mask.set((p / imageWidth - minY) * maskWidth + (p % imageWidth - minX));
+		else {
+			//the region lies within its bounding box, so the mask doubles as
+			//the flood fill's marks
+			int[] rgb = pixels(image);
+			int alpha = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+			int[] stack = new int[64];
+			int stackSize = 0;
+			stack[stackSize++] = seed;
+			mask.set((seed / imageWidth - minY) * maskWidth + (seed % imageWidth - minX));
+			while (stackSize > 0) {
+				int p = stack[--stackSize];
+				int x = p % imageWidth, y = p / imageWidth;
+				for (int[] n : NEIGHBORHOOD) {
+					int nx = x + n[0], ny = y + n[1];
+					if (nx < minX || nx > maxX || ny < minY || ny > maxY) continue;
+					int bit = (ny - minY) * maskWidth + (nx - minX);
+					int np = ny * imageWidth + nx;
+					if (mask.get(bit) || (rgb[np] | alpha) != color) continue;
+					mask.set(bit);
+					if (stackSize == stack.length)
+						stack = Arrays.copyOf(stack, stackSize * 2);
+					stack[stackSize++] = np;
+				}
+			}
+			assert mask.cardinality() == size;
+		}
+		return this.mask = mask;
+	}
+
 	public Point centroid() {
-		return new Point((int)xStats.getAverage(), (int)yStats.getAverage());
+		return new Point((int)((double)sumX / size), (int)((double)sumY / size));
 	}
 
 	public Rectangle boundingBox() {
-		return new Rectangle(xStats.getMin(), yStats.getMin(),
-				xStats.getMax() - xStats.getMin(), yStats.getMax() - yStats.getMin());
+		return new Rectangle(minX, minY, maxX - minX, maxY - minY);
 	}
 
 	public static final class Point {
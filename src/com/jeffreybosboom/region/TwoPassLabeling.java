@@ -0,0 +1,284 @@
+/*
+ * Copyright 2014 Jeffrey Bosboom.
+ * This file is part of lynebot.
+ *
+ * lynebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * lynebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with lynebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jeffreybosboom.region;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Connected-component labelling by the classic two-pass scanline algorithm.
+ * The first pass gives each pixel a provisional label, recording equivalences
+ * between labels of adjacent same-colored pixels in a union-find table; the
+ * second pass replaces each label with its equivalence class.  The image is
+ * divided into horizontal strips labelled in parallel, whose seams are merged
+ * between the passes.
+ *
+ * The provisional label of a pixel starting a new label is its index plus one,
+ * so labels in different strips never collide and label 0 marks uninteresting
+ * pixels.  Unions keep the smaller label as the root, so the root of each
+ * component is the label of its first pixel in row-major order, and the
+ * regions come out in the same order as from the flood fill.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/17/2026
+ */
+final class TwoPassLabeling {
+	private final int width, height;
+	private final int[] rgb;
+	private final int alpha;
+	private final int[] interesting;
+	private final int[] labels;
+	/**
+	 * The union-find table, indexed by label.  parent[l] <= l for all labels
+	 * in use; 0 for labels not in use.
+	 */
+	private final int[] parent;
+	/**
+	 * The first row of each strip, plus height as a sentinel.
+	 */
+	private final int[] stripStarts;
+	private final BufferedImage image;
+	private final boolean keepPixels;
+	/**
+	 * The first pixel of each region, filled in by numberRegions.
+	 */
+	private int[] seeds;
+	private TwoPassLabeling(BufferedImage image, Set<Integer> interestingColors, int strips, boolean keepPixels) {
+		this.image = image;
+		this.keepPixels = keepPixels;
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+		this.rgb = Region.pixels(image);
+		this.alpha = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+		this.interesting = Ints.toArray(interestingColors);
+		this.labels = new int[width * height];
+		this.parent = new int[width * height + 1];
+		strips = Math.max(1, Math.min(strips, height));
+		this.stripStarts = new int[strips + 1];
+		for (int s = 0; s <= strips; ++s)
+			stripStarts[s] = (int)((long)height * s / strips);
+	}
+
+	/**
+	 * Labels the given image, returning regions with their pixels if
+	 * keepPixels is true, or summaries otherwise.
+	 */
+	static ImmutableSet<Region> connectedComponents(BufferedImage image, Set<Integer> interestingColors, int strips, boolean keepPixels) {
+		if (image.getWidth() == 0 || image.getHeight() == 0)
+			return ImmutableSet.of();
+		return new TwoPassLabeling(image, interestingColors, strips, keepPixels).label();
+	}
+
+	private ImmutableSet<Region> label() {
+		int strips = stripStarts.length - 1;
+		IntStream.range(0, strips).parallel().forEach(this::firstPass);
+		for (int s = 1; s < strips; ++s)
+			mergeSeam(stripStarts[s]);
+		int regionCount = numberRegions();
+
+		//count pixels and compute statistics per strip, then combine
+		StripStats[] stats = new StripStats[strips];
+		IntStream.range(0, strips).parallel().forEach(s -> stats[s] = secondPass(s, regionCount));
+		int[][] pixels = keepPixels ? new int[regionCount][] : null;
+		if (keepPixels) {
+			int[][] offsets = new int[strips][regionCount];
+			for (int r = 0; r < regionCount; ++r) {
+				int total = 0;
+				for (int s = 0; s < strips; ++s) {
+					offsets[s][r] = total;
+					total += stats[s].count[r];
+				}
+				pixels[r] = new int[total];
+			}
+			IntStream.range(0, strips).parallel().forEach(s -> collectPixels(s, pixels, offsets[s]));
+		}
+
+		ImmutableSet.Builder<Region> builder = ImmutableSet.builder();
+		for (int r = 0; r < regionCount; ++r) {
+			int size = 0;
+			long sumX = 0, sumY = 0;
+			int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+			for (StripStats st : stats) {
+				if (st.count[r] == 0) continue;
+				size += st.count[r];
+				sumX += st.sumX[r];
+				sumY += st.sumY[r];
+				minX = Math.min(minX, st.minX[r]);
+				maxX = Math.max(maxX, st.maxX[r]);
+				minY = Math.min(minY, st.minY[r]);
+				maxY = Math.max(maxY, st.maxY[r]);
+			}
+			int color = rgb[seeds[r]] | alpha;
+			builder.add(keepPixels ?
+					new Region(color, pixels[r], width, sumX, sumY, minX, maxX, minY, maxY) :
+					new Region(color, image, seeds[r], size, sumX, sumY, minX, maxX, minY, maxY));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Assigns provisional labels to the pixels of the given strip, considering
+	 * only neighbors within the strip.  Touches only labels of this strip, so
+	 * strips can be labelled concurrently.
+	 */
+	private void firstPass(int strip) {
+		int y0 = stripStarts[strip], y1 = stripStarts[strip + 1];
+		for (int y = y0; y < y1; ++y)
+			for (int x = 0, p = y * width; x < width; ++x, ++p) {
+				int color = rgb[p] | alpha;
+				if (!Region.contains(interesting, color)) continue;
+				int label = 0;
+				//the already-labelled half of the neighborhood: W, NW, N, NE
+				if (x > 0)
+					label = join(label, p - 1, color);
+				if (y > y0) {
+					int above = p - width;
+					if (x > 0)
+						label = join(label, above - 1, color);
+					label = join(label, above, color);
+					if (x < width - 1)
+						label = join(label, above + 1, color);
+				}
+				if (label == 0) {
+					label = p + 1;
+					parent[label] = label;
+				}
+				labels[p] = label;
+			}
+	}
+
+	/**
+	 * If the neighbor at index n has the given color, unions its label with
+	 * the given label (if any), returning the resulting root.  Otherwise
+	 * returns the given label.
+	 */
+	private int join(int label, int n, int color) {
+		int nLabel = labels[n];
+		if (nLabel == 0 || (rgb[n] | alpha) != color) return label;
+		return label == 0 ? find(nLabel) : union(label, nLabel);
+	}
+
+	/**
+	 * Unions pixels in the first row of a strip with their neighbors in the
+	 * last row of the previous strip.
+	 */
+	private void mergeSeam(int y) {
+		for (int x = 0, p = y * width; x < width; ++x, ++p) {
+			int label = labels[p];
+			if (label == 0) continue;
+			int color = rgb[p] | alpha;
+			int above = p - width;
+			if (x > 0)
+				join(label, above - 1, color);
+			join(label, above, color);
+			if (x < width - 1)
+				join(label, above + 1, color);
+		}
+	}
+
+	private int find(int label) {
+		while (parent[label] != label) {
+			parent[label] = parent[parent[label]];
+			label = parent[label];
+		}
+		return label;
+	}
+
+	private int union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		if (a < b) {
+			parent[b] = a;
+			return a;
+		}
+		parent[a] = b;
+		return b;
+	}
+
+	/**
+	 * Replaces each in-use entry of the union-find table with the bitwise
+	 * complement of its region number, numbering regions in label order.
+	 * Because parent[l] <= l, a label's parent has always been replaced by the
+	 * time the label is.  Also records each region's first pixel.
+	 * @return the number of regions
+	 */
+	private int numberRegions() {
+		int regions = 0;
+		int[] seeds = new int[16];
+		for (int l = 1; l < parent.length; ++l) {
+			int p = parent[l];
+			if (p == 0) continue;
+			if (p == l) {
+				if (regions == seeds.length)
+					seeds = Arrays.copyOf(seeds, regions * 2);
+				seeds[regions] = l - 1;
+				parent[l] = ~(regions++);
+			} else
+				parent[l] = parent[p];
+		}
+		this.seeds = seeds;
+		return regions;
+	}
+
+	private static final class StripStats {
+		final int[] count;
+		final long[] sumX, sumY;
+		final int[] minX, maxX, minY, maxY;
+		StripStats(int regions) {
+			count = new int[regions];
+			sumX = new long[regions];
+			sumY = new long[regions];
+			minX = new int[regions];
+			maxX = new int[regions];
+			minY = new int[regions];
+			maxY = new int[regions];
+		}
+	}
+
+	private StripStats secondPass(int strip, int regionCount) {
+		StripStats st = new StripStats(regionCount);
+		for (int y = stripStarts[strip]; y < stripStarts[strip + 1]; ++y)
+			for (int x = 0, p = y * width; x < width; ++x, ++p) {
+				if (labels[p] == 0) continue;
+				int r = ~parent[labels[p]];
+				if (st.count[r]++ == 0) {
+					st.minX[r] = st.maxX[r] = x;
+					st.minY[r] = st.maxY[r] = y;
+				}
+				st.sumX[r] += x;
+				st.sumY[r] += y;
+				st.minX[r] = Math.min(st.minX[r], x);
+				st.maxX[r] = Math.max(st.maxX[r], x);
+				//scanning in row order, so y only increases
+				st.maxY[r] = y;
+			}
+		return st;
+	}
+
+	private void collectPixels(int strip, int[][] pixels, int[] offsets) {
+		for (int p = stripStarts[strip] * width; p < stripStarts[strip + 1] * width; ++p) {
+			if (labels[p] == 0) continue;
+			int r = ~parent[labels[p]];
+			pixels[r][offsets[r]++] = p;
+		}
+	}
+}